@@ -3,14 +3,62 @@ package game;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An instance represents a Solver that intelligently determines
- * Moves using the Minimax algorithm.
+ * Moves using the Minimax algorithm, searched depth first with
+ * alpha-beta pruning. An AI either searches to a fixed depth or
+ * searches as deep as it can within a time budget, with one thread or
+ * several.
  */
 public class AI implements Solver {
 
+    /**
+     * The ways an AI can use several threads.
+     */
+    public enum Parallelism {
+        /**
+         * Split the search tree: the moves at the root and near it are
+         * searched as parallel tasks (see Search).
+         */
+        SPLIT,
+        /**
+         * Lazy SMP: helper threads search the same board as the main search,
+         * starting at staggered depths, and help it only by filling the
+         * shared transposition table. The main search decides the moves.
+         */
+        LAZY_SMP
+    }
+
+    /**
+     * The memory, in MB, of the TranspositionTable of an AI that is not
+     * given one.
+     */
+    public static final int DEFAULT_TABLE_MB = 16;
+
+    /**
+     * The depth of the quick search that guesses which replies the opponent
+     * is most likely to play, so that they are pondered first.
+     */
+    private static final int GUESS_DEPTH = 6;
+
+    /**
+     * The least depth of the results an AI writes to its PositionStore:
+     * shallower searches are quicker to repeat than to store.
+     */
+    public static final int MIN_STORED_DEPTH = 8;
+
     private final Player player; // the current player
 
     /**
@@ -18,13 +66,317 @@ public class AI implements Solver {
      */
     private final int depth;
 
+    /**
+     * The time allowed to choose a move, in nanoseconds, or 0 if the search
+     * always goes to depth.
+     */
+    private final long timeBudget;
+
+    /**
+     * The depth of the last search that getMoves completed.
+     */
+    private int depthReached;
+
+    /**
+     * The cache of positions already searched. It is kept between calls to
+     * getMoves, since its entries do not depend on the board searched from.
+     */
+    private final TranspositionTable table;
+
+    /**
+     * The book of opening moves played without searching, or null.
+     */
+    private OpeningBook book;
+
+    /**
+     * The store of search results shared between runs, or null.
+     */
+    private PositionStore store;
+
+    /**
+     * The order in which the search tries moves.
+     */
+    private final MoveOrdering ordering = new MoveOrdering();
+
+    /**
+     * The pool that runs the search in parallel in SPLIT mode, or null.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The threads that run the helper searches in LAZY_SMP mode, or null,
+     * and the number of helpers.
+     */
+    private ExecutorService helperThreads;
+    private int helperCount;
+
+    /**
+     * The number of positions visited by the searches of this AI.
+     */
+    private long nodes;
+
+    /**
+     * The thread that ponders while the opponent is to play (null if this AI
+     * does not ponder), the pondering it is doing, and the flag that stops
+     * it.
+     */
+    private ExecutorService ponderThread;
+    private Future<?> pondering;
+    private final AtomicBoolean ponderStop = new AtomicBoolean();
+
+    /**
+     * The thread that runs the searches asked for by getMovesAsync, created
+     * when first needed, or null.
+     */
+    private ExecutorService searchThread;
+
+    /**
+     * The results of pondering: for each board that the pondered replies
+     * lead to, keyed by its hash, the depth (high int) and the mask of the
+     * best columns (low int) of the deepest search of it that finished.
+     * The data words of OpeningBook have room for only 7 columns.
+     */
+    private final Map<Long, Long> ponderResults = new HashMap<>();
+
     /**
      * Constructor: an instance with player p who searches to depth d
      * when searching the game space for moves.
      */
     public AI(Player p, int d) {
+        this(p, d, new TranspositionTable(DEFAULT_TABLE_MB,
+                TranspositionTable.Replacement.DEPTH_PREFERRED));
+    }
+
+    /**
+     * Constructor: an instance with player p who searches to depth d
+     * when searching the game space for moves, caching positions it has
+     * searched in table t.
+     */
+    public AI(Player p, int d, TranspositionTable t) {
         player = p;
         depth = d;
+        timeBudget = 0;
+        table = t;
+    }
+
+    /**
+     * Constructor: an instance with player p who takes about budget units of
+     * time to choose a move. It searches one move deeper at a time, and
+     * gives the moves of the deepest search that finished within budget.
+     * The search to depth 1 always finishes, however short the budget.
+     * Precondition: budget > 0.
+     */
+    public AI(Player p, long budget, TimeUnit unit) {
+        this(p, budget, unit, new TranspositionTable(DEFAULT_TABLE_MB,
+                TranspositionTable.Replacement.DEPTH_PREFERRED));
+    }
+
+    /**
+     * Constructor: an instance with player p who takes about budget units of
+     * time to choose a move, caching positions it has searched in table t.
+     * Precondition: budget > 0.
+     */
+    public AI(Player p, long budget, TimeUnit unit, TranspositionTable t) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("An AI needs a positive time budget");
+        }
+        player = p;
+        depth = Geometry.MAX_TILES;
+        timeBudget = unit.toNanos(budget);
+        table = t;
+    }
+
+    /**
+     * Search with n threads, splitting the search tree between them. With
+     * n > 1 the moves at the root and near it are searched in parallel, on a
+     * ForkJoinPool of n threads; with n = 1 (the default) the search is
+     * sequential. Either way getMoves returns the same moves.
+     * Precondition: n >= 1.
+     */
+    public void setParallelism(int n) {
+        setParallelism(n, Parallelism.SPLIT);
+    }
+
+    /**
+     * Search with n threads, which share the work as given by mode. With
+     * n = 1 the search is sequential. For a fixed-depth AI getMoves returns
+     * the same moves whatever n and mode are.
+     * Precondition: n >= 1 and mode is not null.
+     */
+    public void setParallelism(int n, Parallelism mode) {
+        if (n < 1) {
+            throw new IllegalArgumentException("An AI needs at least one thread");
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (helperThreads != null) {
+            helperThreads.shutdown();
+            helperThreads = null;
+        }
+        helperCount = 0;
+        if (n > 1 && mode == Parallelism.SPLIT) {
+            pool = new ForkJoinPool(n);
+        } else if (n > 1) {
+            helperCount = n - 1;
+            helperThreads = Executors.newFixedThreadPool(helperCount, r -> {
+                Thread t = new Thread(r, "AI helper");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Play the moves in book b, when the board is in it, instead of
+     * searching (null for no book). A fixed-depth AI uses only the positions
+     * of b that were searched at least as deep as it would search them; an
+     * AI with a time budget uses all of them.
+     */
+    public void setOpeningBook(OpeningBook b) {
+        book = b;
+    }
+
+    /**
+     * Use store s to keep search results between runs (null for none).
+     * Before searching, a fixed-depth AI looks for a result of its own depth
+     * in s, and an AI with a time budget continues from the result in s,
+     * searching deeper. After searching, results of depth MIN_STORED_DEPTH
+     * or more are written back to s in the background.
+     */
+    public void setPositionStore(PositionStore s) {
+        store = s;
+    }
+
+    /**
+     * Ponder (if on is true) or not (the default). An AI that ponders starts
+     * searching, when ponder is called, the boards that the opponent's
+     * likely replies lead to. If the opponent then plays one of those
+     * replies, getMoves can use the result, and often returns at once.
+     */
+    public void setPondering(boolean on) {
+        stopPondering();
+        if (on && ponderThread == null) {
+            ponderThread = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "AI ponder");
+                t.setDaemon(true);
+                return t;
+            });
+        } else if (!on && ponderThread != null) {
+            ponderThread.shutdown();
+            ponderThread = null;
+        }
+    }
+
+    /**
+     * Start pondering on Board b, on which the opponent is to play, in the
+     * background. The next call of getMoves stops the pondering. Does
+     * nothing if this AI does not ponder (see setPondering).
+     */
+    public void ponder(Board b) {
+        if (ponderThread == null)
+            return;
+        stopPondering();
+        ponderResults.clear();
+        if (b.getPossibleColumns() == 0)
+            return;
+        Board board = new Board(b);
+        pondering = ponderThread.submit(() -> ponderReplies(board));
+    }
+
+    /**
+     * Return true if this AI is pondering and has not finished.
+     */
+    public boolean isPondering() {
+        return pondering != null && !pondering.isDone();
+    }
+
+    /**
+     * Stop pondering, if this AI is, and wait for the pondering thread to
+     * leave the search.
+     */
+    private void stopPondering() {
+        if (pondering == null)
+            return;
+        ponderStop.set(true);
+        try {
+            pondering.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+        pondering = null;
+        ponderStop.set(false);
+    }
+
+    /**
+     * Ponder on Board b, on which the opponent is to play: search the board
+     * each reply leads to, as getMoves would, the replies that a quick
+     * search rates best for the opponent first. Results go into ponderResults
+     * as each depth is finished, and into the transposition table.
+     */
+    private void ponderReplies(Board b) {
+        MoveOrdering o = new MoveOrdering();
+        Player opponent = player.opponent();
+        int columns = b.getPossibleColumns();
+        int empty = b.getEmptyCount();
+        Search guess = new Search(b, table, o, null, ponderStop);
+        int likely = guess.searchRoot(opponent, Math.min(GUESS_DEPTH, empty), columns, 0);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int c : b.getGeometry().centerOrder) {
+                if ((columns & (1 << c)) == 0 || ((likely & (1 << c)) != 0) != (pass == 0))
+                    continue;
+                b.makeMove(opponent, c);
+                int replies = b.getPossibleColumns();
+                int maxDepth = Math.min(depth, empty - 1);
+                Search search = new Search(b, table, o, null, ponderStop);
+                int bestColumns = 0;
+                long start = System.nanoTime();
+                o.newSearch();
+                for (int d = 1; d <= maxDepth && replies != 0 && !ponderStop.get(); d++) {
+                    search.setDeadline(timeBudget == 0 ? Long.MAX_VALUE : start + timeBudget);
+                    int result = search.searchRoot(player, d, replies, bestColumns);
+                    if (search.isStopped())
+                        break;
+                    bestColumns = result;
+                    ponderResults.put(b.getHash(), (long) d << Integer.SIZE | bestColumns);
+                }
+                b.undoMove(c);
+                if (ponderStop.get())
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Return the cache of positions searched by this AI.
+     */
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    /**
+     * Return the number of positions visited by the searches of this AI.
+     */
+    public long getNodesSearched() {
+        return nodes;
+    }
+
+    /**
+     * Return the fraction of the cut offs in the searches of this AI that
+     * were caused by the first move tried, which shows how well moves are
+     * ordered. 0 if there have been no cut offs.
+     */
+    public double getFirstMoveCutoffRate() {
+        return ordering.getFirstMoveCutoffRate();
+    }
+
+    /**
+     * Return the depth of the search that gave the moves returned by the
+     * last call to getMoves (0 if getMoves has not been called).
+     */
+    public int getDepthReached() {
+        return depthReached;
     }
 
     /**
@@ -32,39 +384,199 @@ public class AI implements Solver {
      */
     @Override
     public Move[] getMoves(Board b) {
+        return getMoves(b, Long.MAX_VALUE, new AtomicBoolean());
+    }
+
+    /**
+     * See Solver.getMovesAsync for the specification. The search runs on a
+     * thread of this AI, one search at a time; cancelling the future stops
+     * it.
+     */
+    @Override
+    public CompletableFuture<Move[]> getMovesAsync(Board b) {
+        return searchAsync(b, Long.MAX_VALUE);
+    }
+
+    /**
+     * See Solver.getMovesAsync for the specification. The search stops at
+     * the deadline, or at the end of the time budget if that comes first,
+     * and the future completes with the best moves of the deepest search
+     * that finished (at least depth 1). Cancelling the future stops it.
+     */
+    @Override
+    public CompletableFuture<Move[]> getMovesAsync(Board b, long timeout, TimeUnit unit) {
+        long start = System.nanoTime();
+        long t = unit.toNanos(timeout);
+        return searchAsync(b, t >= Long.MAX_VALUE - start ? Long.MAX_VALUE : start + t);
+    }
+
+    /**
+     * Return a future of the moves on Board b found by a search on the
+     * search thread that stops at System.nanoTime deadline (after depth 1)
+     * or when the future is completed by anyone else, as by cancelling it.
+     */
+    private synchronized CompletableFuture<Move[]> searchAsync(Board b, long deadline) {
+        if (b == null)
+            throw new NullPointerException();
+        if (searchThread == null) {
+            searchThread = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "AI search");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        Board board = new Board(b);
+        AtomicBoolean stop = new AtomicBoolean();
+        CompletableFuture<Move[]> moves = new CompletableFuture<>();
+        moves.whenComplete((m, e) -> stop.set(true));
+        searchThread.execute(() -> {
+            if (moves.isDone())
+                return;
+            try {
+                moves.complete(getMoves(board, deadline, stop));
+            } catch (RuntimeException e) {
+                moves.completeExceptionally(e);
+            }
+        });
+        return moves;
+    }
+
+    /**
+     * Return the best moves on Board b found by a search that stops, after
+     * depth 1, at System.nanoTime deadline or when stop is set.
+     */
+    private Move[] getMoves(Board b, long deadline, AtomicBoolean stop) {
         /* 
          * Test precondition (no null boards allowed).
          */
         if (b == null)
             throw new NullPointerException();
         /*
-         *  Get the current state of affairs by taking a snapshot
-         *  of the passed in board with us as the next player. We
-         *  don't know what the last move was so we leave that null.
+         * Search on a copy of the passed in board so that the caller's board
+         * is left alone, playing and taking back moves on that one copy.
          */
-        State currentState = new State(player, b, null);
-        /* 
-         * Create the game tree based on the current state.
-         */
-        createGameTree(currentState, depth);
-        /*  
-         *  Evaluate the newly created tree.
+        stopPondering();
+        Board board = new Board(b);
+        int maxDepth = Math.min(depth, board.getEmptyCount());
+        int bestColumns = bookColumns(board, maxDepth);
+        if (bestColumns != 0)
+            return moves(bestColumns);
+        Search search = new Search(board, table, ordering, pool, stop);
+        /*
+         * Search one move deeper at a time (iterative deepening). Each search
+         * fills the transposition table with best moves that make the next,
+         * deeper search cut off sooner, and starts from the best moves of the
+         * search before it. Searching deeper than the number of empty tiles
+         * would give the same result.
          */
-        minimax(this, currentState);
-        /* 
-         * Get all the immediate children of the current state which 
-         * have a 'best move' value (there could be more than one).
+        int columns = board.getPossibleColumns();
+        depthReached = 0;
+        /*
+         * A result found before, in the store or by pondering, is used as is
+         * if it is of the depth this search would reach; an AI with a time
+         * budget otherwise searches on from it.
          */
-        List<Move> bestMoves = new ArrayList<>();
-        int bestMoveValue = currentState.getValue();
-        for (State state : currentState.getChildren()) {
-            if (state.getValue() == bestMoveValue)
-                bestMoves.add(state.getLastMove());
-        }
-        /*  
-         * Return the dynamic array as a static array.
+        long stored = store == null || columns == 0 ? PositionStore.MISS : store.probe(board, player);
+        int knownDepth = OpeningBook.depth(stored);
+        int knownColumns = OpeningBook.columns(stored);
+        Long pondered = ponderResults.get(board.getHash());
+        if (pondered != null && (int) (pondered >>> Integer.SIZE) > knownDepth) {
+            knownDepth = (int) (pondered >>> Integer.SIZE);
+            knownColumns = (int) (long) pondered;
+        }
+        if (knownDepth != 0) {
+            if (knownDepth == maxDepth) {
+                depthReached = maxDepth;
+                return moves(knownColumns & columns);
+            }
+            if (timeBudget != 0 && knownDepth < maxDepth) {
+                bestColumns = knownColumns & columns;
+                depthReached = knownDepth;
+            }
+        }
+        ordering.newSearch();
+        table.newSearch();
+        long start = System.nanoTime();
+        List<Search> helpers = new ArrayList<>();
+        List<Future<?>> helpersDone = new ArrayList<>();
+        for (int i = 0; i < helperCount && columns != 0; i++) {
+            helpers.add(new Search(new Board(board), table, new MoveOrdering(), null));
+            helpersDone.add(helperThreads.submit(helperSearch(helpers.get(i), i, board.getGeometry(),
+                    columns, maxDepth)));
+        }
+        for (int d = depthReached + 1; d <= maxDepth && columns != 0; d++) {
+            search.setDeadline(d == 1 ? Long.MAX_VALUE
+                    : timeBudget == 0 ? deadline : Math.min(deadline, start + timeBudget));
+            int result = search.searchRoot(player, d, columns, bestColumns);
+            if (search.isStopped())
+                break;
+            bestColumns = result;
+            depthReached = d;
+        }
+        nodes += search.getNodes();
+        if (store != null && depthReached >= MIN_STORED_DEPTH
+                && depthReached > knownDepth)
+            store.put(board, player, bestColumns, search.getRootValue(), depthReached);
+        /*
+         * The helpers' results are no longer needed.
          */
-        return bestMoves.toArray(new Move[] {});
+        for (int i = 0; i < helpers.size(); i++) {
+            helpers.get(i).stop();
+            try {
+                helpersDone.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+            nodes += helpers.get(i).getNodes();
+        }
+        return moves(bestColumns);
+    }
+
+    /**
+     * Return the columns of the best moves on Board b given by the opening
+     * book as a bit mask, or 0 if there is no book, b is not in it, or it was
+     * not searched to depth maxDepth for a fixed-depth AI, whose moves must
+     * be those of its own search.
+     */
+    private int bookColumns(Board b, int maxDepth) {
+        if (book == null)
+            return 0;
+        long entry = book.probe(b, player);
+        if (entry == OpeningBook.MISS || timeBudget == 0 && OpeningBook.depth(entry) != maxDepth)
+            return 0;
+        depthReached = OpeningBook.depth(entry);
+        return OpeningBook.columns(entry) & b.getPossibleColumns();
+    }
+
+    /**
+     * Return the moves that have the 'best move' value, whose columns are in
+     * mask bestColumns, in column order.
+     */
+    private Move[] moves(int bestColumns) {
+        Move[] bestMoves = new Move[Integer.bitCount(bestColumns)];
+        for (int i = 0; bestColumns != 0; i++) {
+            bestMoves[i] = Move.of(player, Integer.numberOfTrailingZeros(bestColumns));
+            bestColumns &= bestColumns - 1;
+        }
+        return bestMoves;
+    }
+
+    /**
+     * Return the work of the i-th LAZY_SMP helper: Search s, of a board of
+     * shape g on which this player is to play with possible moves in mask
+     * columns, deepens up to maxDepth or until it is stopped. Every other
+     * helper starts a move deeper than the main search, and each tries a
+     * different move first, so that the helpers reach different parts of
+     * the tree before the main search does. What they find reaches the main search only through
+     * the transposition table.
+     */
+    private Runnable helperSearch(Search s, int i, Geometry g, int columns, int maxDepth) {
+        int first = columns & (1 << g.centerOrder[(i + 1) % g.cols]);
+        return () -> {
+            for (int d = 1 + (i + 1) % 2; d <= maxDepth && !s.isStopped(); d++) {
+                s.searchRoot(player, d, columns, first);
+            }
+        };
     }
 
     /**
@@ -97,6 +609,69 @@ public class AI implements Solver {
         }
     }
 
+    /**
+     * Return the game tree of depth d whose root is the state of a game with
+     * Board b and Player p to play, stored compactly as a GameTree. This
+     * builds the same tree as createGameTree(State, int) in a small fraction
+     * of the memory.
+     * <p/>
+     * Note: a node whose board has a winner is a leaf.
+     */
+    public static GameTree createGameTree(Board b, Player p, int d) {
+        GameTree t = new GameTree(b, p);
+        expand(t, t.getRoot(), new Board(b), p, d);
+        return t;
+    }
+
+    /**
+     * Make the descendants of node n of tree t down to d moves below it,
+     * where b is the board of n and Player p is to play at n. b is unchanged
+     * when this returns.
+     */
+    private static void expand(GameTree t, int n, Board b, Player p, int d) {
+        if (d == 0)
+            return;
+        t.expand(n, b, p);
+        for (int i = 0; i < t.getChildCount(n); i++) {
+            int child = t.getChild(n, i);
+            int c = t.getLastMove(child).getColumn();
+            b.makeMove(p, c);
+            expand(t, child, b, p.opponent(), d - 1);
+            b.undoMove(c);
+        }
+    }
+
+    /**
+     * Use the Minimax algorithm to assign a value to each node of game tree
+     * t, as minimax(State) does for a tree of States.
+     */
+    public void minimax(GameTree t) {
+        minimax(t, t.getRoot(), t.getBoard(t.getRoot()), t.getPlayer(t.getRoot()));
+    }
+
+    /**
+     * Assign values to node n of tree t and its descendants, where b is the
+     * board of n and Player p is to play at n. b is unchanged when this
+     * returns.
+     */
+    private void minimax(GameTree t, int n, Board b, Player p) {
+        int count = t.getChildCount(n);
+        if (count == 0) {
+            t.setValue(n, evaluateBoard(b));
+            return;
+        }
+        int value = p == player ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int child = t.getChild(n, i);
+            int c = t.getLastMove(child).getColumn();
+            b.makeMove(p, c);
+            minimax(t, child, b, p.opponent());
+            b.undoMove(c);
+            value = p == player ? Math.max(value, t.getValue(child)) : Math.min(value, t.getValue(child));
+        }
+        t.setValue(n, value);
+    }
+
     /**
      * Call minimax in ai with state s.
      */
@@ -162,26 +737,23 @@ public class AI implements Solver {
      * effective when looking several moves into the future).
      */
     public int evaluateBoard(Board b) {
+        return evaluate(b, player);
+    }
+
+    /**
+     * Evaluate the desirability of Board b for Player p. The value for p's
+     * opponent is minus the value for p.
+     */
+    static int evaluate(Board b, Player p) {
         Player winner = b.hasConnectFour();
-        int value = 0;
         if (winner == null) {
-            // Store in sum the value of board b. 
-            List<Player[]> locs = b.winLocations();
-            for (Player[] loc : locs) {
-                for (Player p : loc) {
-                    value += (p == player ? 1 : p != null ? -1 : 0);
-                }
-            }
-        } else {
-            // There is a winner
-            int numEmpty = 0;
-            for (int r = 0; r < Board.NUM_ROWS; r = r + 1) {
-                for (int c = 0; c < Board.NUM_COLS; c = c + 1) {
-                    if (b.getTile(r, c) == null) numEmpty += 1;
-                }
-            }
-            value = (winner == player ? 1 : -1) * 10000 * numEmpty;
+            // The value of board b: one point for each of our pieces in a win
+            // location and minus one for each opposing piece. Board keeps
+            // this sum up to date as moves are made.
+            return b.getLineScore(p);
         }
-        return value;
+        // There is a winner
+        int numEmpty = b.getEmptyCount();
+        return (winner == p ? 1 : -1) * 10000 * numEmpty;
     }
 }
@@ -7,47 +7,136 @@ import java.util.List;
  * An instance represents a grid of pieces from two opposing
  * players in a game of Connect Four. The grid is 0-indexed first by rows
  * starting at the top, then by columns 0-indexed starting at the left.
+ * A Board is NUM_ROWS by NUM_COLS unless it is made with another Geometry.
  */
 public class Board {
     /**
-     * The number of rows on the Connect Four board.
+     * The number of rows on the standard Connect Four board.
      */
     public static final int NUM_ROWS = 6;
     /**
-     * The number of columns on the Connect Four board.
+     * The number of columns on the standard Connect Four board.
      */
     public static final int NUM_COLS = 7;
 
-    private static final int FOUR = 4; // four in a line
+    static final int FOUR = 4; // four in a line
     
     private static final Move[] NO_MOVES = new Move[]{};
 
     /**
      * vertical, horizontal, uphill, downhill, directions from any position
      */
-    private static final int[][] deltas = {{1, 0}, {0, 1}, {-1, 1}, {1, 1}};
+    static final int[][] deltas = {{1, 0}, {0, 1}, {-1, 1}, {1, 1}};
+
+    /*
+     * The grid is stored as bitboards, one per player, of one or two words
+     * laid out as Geometry describes. On the standard board each column
+     * takes NUM_ROWS + 1 consecutive bits of the first word, the lowest bit
+     * being the bottom tile of the column; the extra bit on top of each
+     * column is always zero so that shifting a line of discs never wraps
+     * into the next column.
+     *
+     *   6 13 20 27 34 41 48
+     *   5 12 19 26 33 40 47
+     *   4 11 18 25 32 39 46
+     *   3 10 17 24 31 38 45
+     *   2  9 16 23 30 37 44
+     *   1  8 15 22 29 36 43
+     *   0  7 14 21 28 35 42
+     */
+
+    /**
+     * The shape of this Board, whose tables of lines, hash keys and mirror
+     * tiles this Board uses.
+     */
+    private final Geometry geometry;
+
+    /**
+     * The discs of Player.RED and Player.YELLOW respectively, in the first
+     * word and in the second (always 0 if the board fits in one word).
+     */
+    private long red;
+    private long yellow;
+    private long redHigh;
+    private long yellowHigh;
 
     /**
-     * The grid of Player pieces.
+     * The number of discs on the board.
      */
-    private Player[][] board;
+    private int numMoves;
 
     /**
-     * Constructor: an empty Board.
+     * The player whose last disc completed four in a line (null if none has).
+     * Only the last disc placed can complete a line, because no move is
+     * allowed once a player has won.
+     */
+    private Player winner;
+
+    /**
+     * The number of discs of each player on each line of four tiles of the
+     * geometry: the count for the i-th line is at i for Player.RED and at
+     * the number of lines + i for Player.YELLOW. A line whose count reaches
+     * four is a win.
+     */
+    private byte[] lineCounts;
+
+    /**
+     * The sum of the RED counts of lineCounts minus the sum of its YELLOW
+     * counts, i.e. the pieces RED has in win locations minus those YELLOW has.
+     */
+    private int lineScore;
+
+    /**
+     * The Zobrist hash of the discs on the board, and that of its mirror
+     * image across the center column, kept up to date as discs are placed
+     * and taken back.
+     */
+    private long hash;
+    private long mirrorHash;
+
+    /**
+     * Constructor: an empty Board of the standard size, NUM_ROWS by NUM_COLS.
      */
     public Board() {
-        board = new Player[NUM_ROWS][NUM_COLS];
+        this(Geometry.STANDARD);
+    }
+
+    /**
+     * Constructor: an empty Board of shape g.
+     */
+    public Board(Geometry g) {
+        geometry = g;
+        lineCounts = new byte[2 * g.winLineTiles.length];
     }
 
     /**
      * Constructor: a duplicate of Board b.
      */
     public Board(Board b) {
-        board = new Player[NUM_ROWS][NUM_COLS];
-        for (int r = 0; r < NUM_ROWS; r++) {
-            for (int c = 0; c < NUM_COLS; c++) {
-                board[r][c] = b.board[r][c];
-            }
+        geometry = b.geometry;
+        red = b.red;
+        yellow = b.yellow;
+        redHigh = b.redHigh;
+        yellowHigh = b.yellowHigh;
+        numMoves = b.numMoves;
+        winner = b.winner;
+        lineCounts = b.lineCounts.clone();
+        lineScore = b.lineScore;
+        hash = b.hash;
+        mirrorHash = b.mirrorHash;
+    }
+
+    /**
+     * Constructor: a standard Board with the discs of bitboards red and
+     * yellow, as given by getDiscs.
+     * Precondition: the discs of each column are stacked from its bottom
+     * and no tile holds two discs.
+     */
+    Board(long red, long yellow) {
+        this();
+        for (long discs = red | yellow; discs != 0; discs &= discs - 1) {
+            long slot = Long.lowestOneBit(discs);
+            place((red & slot) != 0 ? Player.RED : Player.YELLOW, 0, slot);
         }
     }
 
@@ -56,8 +145,8 @@ public class Board {
      * Precondition: r and c give a position on the board
      */
     public Player getPlayer(int r, int c) {
-        assert 0 <= r && r < NUM_ROWS && 0 <= c && c < NUM_COLS;
-        return board[r][c];
+        assert 0 <= r && r < geometry.rows && 0 <= c && c < geometry.cols;
+        return getTile(r, c);
     }
 
     /**
@@ -73,9 +162,99 @@ public class Board {
      * Return the Player at board position (row, col). Rows are
      * 0-indexed starting at the top and columns are 0-indexed starting
      * at the left. A null return value indicates an empty tile.
+     * Throw an IndexOutOfBoundsException if (row, col) is not on this Board.
      */
     public Player getTile(int row, int col) {
-        return board[row][col];
+        if (row < 0 || row >= geometry.rows || col < 0 || col >= geometry.cols)
+            throw new IndexOutOfBoundsException("There is no tile (" + row + ", " + col + ")");
+        long tile = 1L << (geometry.shift[col] + geometry.rows - 1 - row);
+        int w = geometry.word[col];
+        if ((getDiscs(Player.RED, w) & tile) != 0) return Player.RED;
+        if ((getDiscs(Player.YELLOW, w) & tile) != 0) return Player.YELLOW;
+        return null;
+    }
+
+    /**
+     * Return the shape of this Board.
+     */
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Return the number of rows of this Board.
+     */
+    public int getNumRows() {
+        return geometry.rows;
+    }
+
+    /**
+     * Return the number of columns of this Board.
+     */
+    public int getNumCols() {
+        return geometry.cols;
+    }
+
+    /**
+     * Return the hash (see getHash) of the mirror image of this Board, the
+     * board with the columns in reverse order. A board and its mirror image
+     * are equally good for each player, so the smaller of getHash and
+     * getMirrorHash can be used as the key of both.
+     */
+    public long getMirrorHash() {
+        return mirrorHash;
+    }
+
+    /**
+     * Return true if this Board is its own mirror image, i.e. each column
+     * holds the same pieces as the column the same distance from the other
+     * edge.
+     */
+    public boolean isSymmetric() {
+        for (int col = 0; col < geometry.cols / 2; col++) {
+            int other = geometry.mirror(col);
+            if (columnBits(Player.RED, col) != columnBits(Player.RED, other)
+                    || columnBits(Player.YELLOW, col) != columnBits(Player.YELLOW, other))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return the number of pieces p has in win locations (see winLocations)
+     * minus the number its opponent has, counting a piece once for each win
+     * location it is in. This is kept up to date as moves are made, so it
+     * takes no time to compute.
+     */
+    int getLineScore(Player p) {
+        return p == Player.RED ? lineScore : -lineScore;
+    }
+
+    /**
+     * Return the bitboard of p's discs in the first word: on the standard
+     * board, bit col * (NUM_ROWS + 1) + h is set if p has the disc h tiles
+     * above the bottom of column col. This is all of p's discs on a board
+     * that fits in one word.
+     */
+    long getDiscs(Player p) {
+        return p == Player.RED ? red : yellow;
+    }
+
+    /**
+     * Return the bitboard of p's discs in word w (see Geometry).
+     */
+    long getDiscs(Player p, int w) {
+        if (w == 0)
+            return p == Player.RED ? red : yellow;
+        return p == Player.RED ? redHigh : yellowHigh;
+    }
+
+    /**
+     * Return a 64-bit hash of the discs on this Board. Equal boards have
+     * equal hashes, and different boards almost certainly do not.
+     */
+    public long getHash() {
+        return hash;
     }
 
     /**
@@ -84,31 +263,136 @@ public class Board {
      * Throw an IllegalArgumentException if move's column is full on this Board.
      */
     public void makeMove(Move move) {
+        makeMove(move.getPlayer(), move.getColumn());
+    }
+
+    /**
+     * Place a piece from player p into column col on this Board.
+     * Throw an UnsupportedOperationException if the game is over or
+     * column col is full on this Board.
+     */
+    public void makeMove(Player p, int col) {
         
         /*
          * If there are no possible moves then the game is over.
          */
-        if(getPossibleMoves(move.getPlayer()) == NO_MOVES)
+        if (winner != null || isFull())
             throw new UnsupportedOperationException("Illegal Move: The game is over.");
         
         /*
-         * Otherwise play the move into the designated column by finding the
-         * first empty slot from bottom to top and putting the move's player in
-         * that empty slot.
+         * Otherwise play the move into the designated column. Adding the
+         * column's bottom bit to the occupied tiles carries up to the first
+         * empty slot of that column.
+         */
+        assert 0 <= col && col < geometry.cols;
+        int w = geometry.word[col];
+        long occupied = w == 0 ? red | yellow : redHigh | yellowHigh;
+        int shift = geometry.shift[col];
+        long slot = (occupied + (1L << shift)) & (geometry.columnMask << shift);
+        /*
+         * If the carry went past the top of the column then it was full.
          */
-        int col = move.getColumn();
-        assert 0 <= col && col < NUM_COLS;
-        for (int row = NUM_ROWS - 1; row >= 0; row--) {
-            if (board[row][col] == null) {
-                board[row][col] = move.getPlayer();
-                return;
+        if (slot == 0)
+            throw new UnsupportedOperationException(
+                    "Illegal Move: Cannot place disc in full column. Try again.");
+        place(p, w, slot);
+    }
+
+    /**
+     * Put a disc of Player p on the empty tile whose bit in word w is slot,
+     * updating the counts, hashes and winner.
+     */
+    private void place(Player p, int w, long slot) {
+        if (w == 0) {
+            if (p == Player.RED) {
+                red |= slot;
+            } else {
+                yellow |= slot;
             }
+        } else if (p == Player.RED) {
+            redHigh |= slot;
+        } else {
+            yellowHigh |= slot;
         }
+        numMoves++;
+        int tile = w * Long.SIZE + Long.numberOfTrailingZeros(slot);
+        long[] keys = geometry.zobrist[p.ordinal()];
+        hash ^= keys[tile];
+        mirrorHash ^= keys[geometry.mirrorTile[tile]];
         /*
-         * If we haven't found a slot for the player then the column was full.
+         * Only lines through the new disc can have become four in a row.
          */
-        throw new UnsupportedOperationException(
-                "Illegal Move: Cannot place disc in full column. Try again.");
+        int[] lines = geometry.linesThrough[tile];
+        int offset = p.ordinal() * geometry.winLineTiles.length;
+        for (int line : lines) {
+            if (++lineCounts[offset + line] == FOUR) {
+                winner = p;
+            }
+        }
+        lineScore += p == Player.RED ? lines.length : -lines.length;
+    }
+
+    /**
+     * Take back the last move made on this Board, which was made in column
+     * col, by removing the top piece of that column. Together with makeMove
+     * this lets a search play and retract moves on a single Board instead
+     * of copying it for every position.
+     * Throw an UnsupportedOperationException if column col is empty.
+     * Precondition: the last move made on this Board was in column col.
+     */
+    public void undoMove(int col) {
+        assert 0 <= col && col < geometry.cols;
+        int w = geometry.word[col];
+        long mine = w == 0 ? red : redHigh;
+        long occupied = w == 0 ? red | yellow : redHigh | yellowHigh;
+        long disc = Long.highestOneBit(occupied & (geometry.columnMask << geometry.shift[col]));
+        if (disc == 0)
+            throw new UnsupportedOperationException(
+                    "Illegal Move: Cannot take back a disc from an empty column.");
+        Player p = (mine & disc) != 0 ? Player.RED : Player.YELLOW;
+        if (w == 0) {
+            red &= ~disc;
+            yellow &= ~disc;
+        } else {
+            redHigh &= ~disc;
+            yellowHigh &= ~disc;
+        }
+        numMoves--;
+        int tile = w * Long.SIZE + Long.numberOfTrailingZeros(disc);
+        long[] keys = geometry.zobrist[p.ordinal()];
+        hash ^= keys[tile];
+        mirrorHash ^= keys[geometry.mirrorTile[tile]];
+        int[] lines = geometry.linesThrough[tile];
+        int offset = p.ordinal() * geometry.winLineTiles.length;
+        for (int line : lines) {
+            lineCounts[offset + line]--;
+        }
+        lineScore -= p == Player.RED ? lines.length : -lines.length;
+        /*
+         * No move is allowed after a win, so there was no winner before the
+         * last move.
+         */
+        winner = null;
+    }
+
+    /**
+     * Return the columns that a move can be made in on this Board, as a bit
+     * mask in which bit c is set if column c is not full. The mask is 0 if
+     * the board has a winner, since the game is then over.
+     */
+    public int getPossibleColumns() {
+        if (winner != null) return 0;
+        long occupied = red | yellow;
+        long occupiedHigh = redHigh | yellowHigh;
+        long top = 1L << (geometry.rows - 1);
+        int columns = 0;
+        for (int col = 0; col < geometry.cols; col++) {
+            long o = geometry.word[col] == 0 ? occupied : occupiedHigh;
+            if ((o & (top << geometry.shift[col])) == 0) {
+                columns |= 1 << col;
+            }
+        }
+        return columns;
     }
 
     /**
@@ -125,27 +409,18 @@ public class Board {
         /*
          * If the game is over no moves are possible.
          */
-        if (hasConnectFour() != null) return NO_MOVES;
+        int columns = getPossibleColumns();
+        if (columns == 0) return NO_MOVES;
         /*
-         * Otherwise create dynamic array list for the possible moves.
+         * Otherwise there is one move for each bit of the mask, taken from
+         * the lowest column up.
          */
-        List<Move> possibleMoves = new ArrayList<>();
-        /*
-         * For each column if the top row (0) is empty then a move is possible.
-         */
-        for (int col = 0; col < NUM_COLS; col++) {
-            if (board[0][col] == null) {
-                possibleMoves.add(new Move(p, col));
-            }
-        }
-        /*
-         * Convert dynamic array to static array and return it.
-         */
-        Move[] returnedArray = new Move[possibleMoves.size()];
-        for (int i = 0; i < returnedArray.length; i++) {
-            returnedArray[i] = possibleMoves.get(i);
+        Move[] possibleMoves = new Move[Integer.bitCount(columns)];
+        for (int i = 0; columns != 0; i++) {
+            possibleMoves[i] = Move.of(p, Integer.numberOfTrailingZeros(columns));
+            columns &= columns - 1;
         }
-        return returnedArray;
+        return possibleMoves;
     }
 
     /**
@@ -162,9 +437,10 @@ public class Board {
      */
     public String toString(String prefix) {
         StringBuilder str = new StringBuilder("");
-        for (Player[] row : board) {
+        for (int r = 0; r < geometry.rows; r++) {
             str.append(prefix + "|");
-            for (Player spot : row) {
+            for (int c = 0; c < geometry.cols; c++) {
+                Player spot = getTile(r, c);
                 if (spot == null) {
                     str.append(" |");
                 } else if (spot == Player.RED) {
@@ -182,30 +458,64 @@ public class Board {
      * Return the Player that has four in a row (or null if no player has).
      */
     public Player hasConnectFour() {
-        for (Player[] loc : winLocations()) {
-            if (loc[0] != null && loc[0] == loc[1] && loc[0] == loc[2] && loc[0] == loc[3]) {
-                return loc[0];
-            }
-        }
-        return null;
+        return winner;
+    }
+
+    /**
+     * Return the number of pieces on this Board.
+     */
+    public int getMoveCount() {
+        return numMoves;
+    }
+
+    /**
+     * Return the number of empty tiles on this Board.
+     */
+    public int getEmptyCount() {
+        return geometry.tiles - numMoves;
+    }
+
+    /**
+     * Return true if every tile of this Board is occupied.
+     */
+    public boolean isFull() {
+        return numMoves == geometry.tiles;
+    }
+
+    /**
+     * Return true if column col has no empty tile left.
+     * Precondition: col in 0..getNumCols()-1.
+     */
+    public boolean isColumnFull(int col) {
+        long occupied = getDiscs(Player.RED, geometry.word[col]) | getDiscs(Player.YELLOW, geometry.word[col]);
+        return (occupied & (1L << (geometry.shift[col] + geometry.rows - 1))) != 0;
+    }
+
+    /**
+     * Return the bits of column col of p's discs, shifted down to the lowest
+     * bits.
+     */
+    private long columnBits(Player p, int col) {
+        return (getDiscs(p, geometry.word[col]) >>> geometry.shift[col]) & geometry.columnMask;
     }
 
     /**
      * Return a list of all locations where it is possible to
      * achieve connect four. In this context, a "win location" is an
      * array of the Player pieces on this Board from four connected tiles.
+     * <p/>
+     * Note: this allocates a new list of arrays on every call. It is kept for
+     * callers that want the pieces themselves; bitboard code should use the
+     * line counts kept as moves are made instead.
      */
     public List<Player[]> winLocations() {
-        List<Player[]> locations = new ArrayList<>();
-        for (int[] delta : deltas) {
-            for (int r = 0; r < NUM_ROWS; r++) {
-                for (int c = 0; c < NUM_COLS; c++) {
-                    Player[] loc = possibleWin(r, c, delta);
-                    if (loc != null) {
-                        locations.add(loc);
-                    }
-                }
+        List<Player[]> locations = new ArrayList<>(geometry.winLineTiles.length);
+        for (int[][] line : geometry.winLineTiles) {
+            Player[] loc = new Player[FOUR];
+            for (int i = 0; i < FOUR; i++) {
+                loc[i] = getTile(line[i][0], line[i][1]);
             }
+            locations.add(loc);
         }
         return locations;
     }
@@ -223,10 +533,10 @@ public class Board {
         for (int i = 0; i < FOUR; i++) {
             int newR = r + i * delta[0];
             int newC = c + i * delta[1];
-            if (!(0 <= newR && newR < NUM_ROWS && 0 <= newC && newC < NUM_COLS)) {
+            if (!(0 <= newR && newR < geometry.rows && 0 <= newC && newC < geometry.cols)) {
                 return null;
             }
-            location[i] = board[newR][newC];
+            location[i] = getTile(newR, newC);
         }
         return location;
     }
@@ -0,0 +1,47 @@
+package game;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Timed completion of CompletableFutures, for Solvers and Games that wait
+ * without holding a thread. One daemon thread does the timing for all of
+ * them, so whatever depends on one of these futures must not run on that
+ * thread: it would hold up every other timer. Continue with the Async
+ * methods of CompletableFuture, on an executor of your own.
+ */
+final class Delays {
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Delays");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Delays() {
+    }
+
+    /**
+     * Return a future that completes, with null, delay from now.
+     */
+    static CompletableFuture<Void> after(long delay, TimeUnit unit) {
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        timer.schedule(() -> f.complete(null), delay, unit);
+        return f;
+    }
+
+    /**
+     * Complete future f with a TimeoutException if it is not complete
+     * timeout from now, and return f.
+     */
+    static <T> CompletableFuture<T> within(CompletableFuture<T> f, long timeout, TimeUnit unit) {
+        ScheduledFuture<?> t = timer.schedule(() -> f.completeExceptionally(new TimeoutException()),
+                timeout, unit);
+        f.whenComplete((v, e) -> t.cancel(false));
+        return f;
+    }
+}
@@ -1,6 +1,7 @@
 package game;
 
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -22,12 +23,21 @@ public class Dummy implements Solver {
     @Override
     public Move[] getMoves(Board b) {
         Random rand = new Random();
-        int column = rand.nextInt(Board.NUM_COLS);
+        int column = rand.nextInt(b.getNumCols());
         while (b.getTile(0, column) != null) {
-            column = rand.nextInt(Board.NUM_COLS);
+            column = rand.nextInt(b.getNumCols());
         }
-        Move[] move = {new Move(myColour, column)};
+        Move[] move = {Move.of(myColour, column)};
         return move;
     }
 
+    /**
+     * See Solver.getMovesAsync for the specification. A random move takes no
+     * time, so the future is complete when it is returned.
+     */
+    @Override
+    public CompletableFuture<Move[]> getMovesAsync(Board b) {
+        return CompletableFuture.completedFuture(getMoves(b));
+    }
+
 }
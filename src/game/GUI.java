@@ -36,6 +36,7 @@ public class GUI extends JFrame {
         Solver p2 = new AI(Player.YELLOW, 5);
         //Solver p1 = new Dummy(Player.RED);
         //Solver p2 = new Dummy(Player.YELLOW);
+        //Solver p2 = new PerfectSolver(Player.YELLOW);
         //Solver p1 = new Human(Player.RED);
         //Solver p2 = new Human(Player.YELLOW);
 
@@ -1,5 +1,10 @@
 package game;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Runs the Connect Four game.
  */
@@ -11,6 +16,7 @@ public class Game {
     private Solver activePlayer;  // The possible moves to the player whose turn it is
     private GUI gui;
     private Player winner;  // null
+    private Executor executor = ForkJoinPool.commonPool(); // Runs the turns of playAsync
 
     //Change this if you would like a delay between plays
     private static final long SLEEP_INTERVAL = 100; //in milliseconds
@@ -155,6 +161,15 @@ public class Game {
         this.gui = gui;
     }
 
+    /**
+     * Run the turns of the games started by playAsync, each of which plays
+     * the move chosen and asks for the next one, on Executor e. The default
+     * is the common ForkJoinPool.
+     */
+    public void setExecutor(Executor e) {
+        executor = e;
+    }
+
     /**
      * Notify this Game that column col has been clicked by a user.
      */
@@ -169,51 +184,103 @@ public class Game {
      * sent to the console.
      */
     public void runGame() {
-        while (!isGameOver()) {
-            //Checking to see that the move can be made (not overflowing a column)
-            boolean moveIsSafe = false;
-            Move nextMove = null;
-            while (!moveIsSafe) {
-                Move[] bestMoves = activePlayer.getMoves(board);
-                if (bestMoves.length == 0) {
-                    gui.setMsg("Game cannot continue until a Move is produced.");
-                    continue;
-                } else {
-                    nextMove = bestMoves[0];
-                }
-                if (board.getTile(0, nextMove.getColumn()) == null) {
-                    moveIsSafe = true;
+        playAsync().join();
+    }
+
+    /**
+     * Start the game and return a future that completes, with the winner
+     * (null for a tie), when it is finished. No thread waits while a player
+     * chooses a move: each move is asked for with Solver.getMovesAsync, and
+     * played when it arrives, on the executor (see setExecutor). If GUI is
+     * not initialized, the output will be sent to the console.
+     */
+    public CompletableFuture<Player> playAsync() {
+        CompletableFuture<Player> result = new CompletableFuture<>();
+        nextMove(result);
+        return result;
+    }
+
+    /**
+     * Ask the active player for a move and play it, then do the same for the
+     * next player after SLEEP_INTERVAL, until the game is over and result is
+     * completed.
+     */
+    private void nextMove(CompletableFuture<Player> result) {
+        try {
+            if (isGameOver()) {
+                if (gui == null) {
+                    if (winner == null) {
+                        System.out.println("Tie game!");
+                    } else {
+                        System.out.println(winner + " won the game!!!");
+                    }
                 } else {
-                    gui.setMsg("Illegal Move: Cannot place disc in full column. Try again.");
+                    gui.notifyGameOver(winner);
                 }
+                result.complete(winner);
+                return;
             }
+            // The delay lets you easily view the plays being made by the AIs.
+            // The turn runs on the executor, not on the threads of the solver
+            // or of Delays.
+            activePlayer.getMovesAsync(board)
+                    .thenAcceptAsync(this::play, executor)
+                    .thenCompose(v -> Delays.after(SLEEP_INTERVAL, TimeUnit.MILLISECONDS))
+                    .whenCompleteAsync((v, e) -> {
+                        if (e != null) {
+                            result.completeExceptionally(e);
+                        } else {
+                            nextMove(result);
+                        }
+                    }, executor);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
 
-            board.makeMove(nextMove);
-            if (gui == null) {
-                System.out.println(nextMove);
-                System.out.println(board);
-            } else {
-                gui.updateGUI(board, nextMove);
-            }
-            activePlayer = (activePlayer == player1 ? player2 : player1);
-
-            // The following code causes a delay so that you can easily view the plays
-            // being made by the AIs
-            try {
-                Thread.sleep(SLEEP_INTERVAL);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Play the first of bestMoves, the moves the active player chose, and
+     * make the other player active. If there is no move or it is illegal
+     * (off the board or in a full column), say so and leave the same player
+     * active, to be asked again.
+     */
+    private void play(Move[] bestMoves) {
+        //Checking to see that the move can be made (not overflowing a column)
+        if (bestMoves.length == 0) {
+            setMsg("Game cannot continue until a Move is produced.");
+            return;
+        }
+        Move nextMove = bestMoves[0];
+        int col = nextMove.getColumn();
+        if (col < 0 || col >= board.getNumCols() || board.getTile(0, col) != null) {
+            setMsg(col >= board.getNumCols() ? "Illegal Move: There is no column " + col + ". Try again."
+                    : "Illegal Move: Cannot place disc in full column. Try again.");
+            return;
         }
 
+        board.makeMove(nextMove);
         if (gui == null) {
-            if (winner == null) {
-                System.out.println("Tie game!");
-            } else {
-                System.out.println(winner + " won the game!!!");
-            }
+            System.out.println(nextMove);
+            System.out.println(board);
         } else {
-            gui.notifyGameOver(winner);
+            gui.updateGUI(board, nextMove);
+        }
+        activePlayer = (activePlayer == player1 ? player2 : player1);
+        // An AI can ponder while its opponent chooses a move
+        Solver waitingPlayer = (activePlayer == player1 ? player2 : player1);
+        if (waitingPlayer instanceof AI) {
+            ((AI) waitingPlayer).ponder(board);
+        }
+    }
+
+    /**
+     * Show message m in the GUI, or on the console if there is none.
+     */
+    private void setMsg(String m) {
+        if (gui == null) {
+            System.out.println(m);
+        } else {
+            gui.setMsg(m);
         }
     }
 
@@ -227,13 +294,6 @@ public class Game {
         if (winner != null) return true;
 
         // if there is an unfilled tile, return false;
-        for (int r = 0; r < Board.NUM_ROWS; r = r + 1) {
-            for (int c = 0; c < Board.NUM_COLS; c = c + 1) {
-                if (board.getTile(r, c) == null)
-                    return false;
-            }
-        }
-
-        return true;
+        return board.isFull();
     }
 }
\ No newline at end of file
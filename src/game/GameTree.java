@@ -0,0 +1,233 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * An instance is a game tree stored compactly: instead of a State, a Board
+ * and a Move object per node, each node is an index into a few parallel
+ * arrays, so a node takes about 22 bytes and the tree only a handful of
+ * objects. Node 0 is the root. The children of a node are numbered
+ * consecutively, in column order, so a node records only its first child
+ * and how many it has.
+ * <p/>
+ * Nodes do not keep their boards. The board of a node is rebuilt when it is
+ * asked for, by playing the moves from the root to the node; walks of the
+ * whole tree, such as AI.minimax, play and take back moves on one Board
+ * instead. toState gives the State objects of a subtree, for code that
+ * works with States.
+ */
+public class GameTree {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final Board rootBoard;
+    private final Player rootPlayer;
+
+    /*
+     * The fields of node n are at index n of each array: its parent (-1 for
+     * the root), its first child, its number of children, the column of the
+     * move that led to it (-1 for the root), its value, and the hash of its
+     * board (see Board.getHash).
+     */
+    private int[] parent;
+    private int[] firstChild;
+    private byte[] childCount;
+    private byte[] column;
+    private int[] value;
+    private long[] key;
+
+    /**
+     * The number of nodes.
+     */
+    private int size;
+
+    /**
+     * Constructor: a tree of only a root, the state of a game with Board b
+     * and Player p to play. The tree keeps a copy of b.
+     */
+    public GameTree(Board b, Player p) {
+        rootBoard = new Board(b);
+        rootPlayer = p;
+        parent = new int[INITIAL_CAPACITY];
+        firstChild = new int[INITIAL_CAPACITY];
+        childCount = new byte[INITIAL_CAPACITY];
+        column = new byte[INITIAL_CAPACITY];
+        value = new int[INITIAL_CAPACITY];
+        key = new long[INITIAL_CAPACITY];
+        add(-1, -1, rootBoard.getHash());
+    }
+
+    /**
+     * Return the number of nodes in this tree.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the number of bytes of the arrays that hold the nodes.
+     */
+    public long getMemoryUsed() {
+        return (long) parent.length * (3 * Integer.BYTES + 2 + Long.BYTES);
+    }
+
+    /**
+     * Return the root node.
+     */
+    public int getRoot() {
+        return 0;
+    }
+
+    /**
+     * Return the parent of node n, or -1 if n is the root.
+     */
+    public int getParent(int n) {
+        return parent[n];
+    }
+
+    /**
+     * Return the number of children of node n (0 if they have not been
+     * made, see expand).
+     */
+    public int getChildCount(int n) {
+        return childCount[n];
+    }
+
+    /**
+     * Return the i-th child of node n, counting the children in column order
+     * from 0.
+     * Precondition: 0 <= i < getChildCount(n).
+     */
+    public int getChild(int n, int i) {
+        return firstChild[n] + i;
+    }
+
+    /**
+     * Return the player to play at node n.
+     */
+    public Player getPlayer(int n) {
+        return getDepth(n) % 2 == 0 ? rootPlayer : rootPlayer.opponent();
+    }
+
+    /**
+     * Return the number of moves from the root to node n.
+     */
+    public int getDepth(int n) {
+        int d = 0;
+        for (int m = n; parent[m] != -1; m = parent[m]) {
+            d++;
+        }
+        return d;
+    }
+
+    /**
+     * Return the move that led to node n, or null if n is the root.
+     */
+    public Move getLastMove(int n) {
+        return parent[n] == -1 ? null : Move.of(getPlayer(parent[n]), column[n]);
+    }
+
+    /**
+     * Return the value of node n.
+     */
+    public int getValue(int n) {
+        return value[n];
+    }
+
+    /**
+     * Set the value of node n to v.
+     */
+    public void setValue(int n, int v) {
+        value[n] = v;
+    }
+
+    /**
+     * Return the hash (see Board.getHash) of the board of node n.
+     */
+    public long getKey(int n) {
+        return key[n];
+    }
+
+    /**
+     * Return a new Board with the layout of node n, made by playing the
+     * moves from the root to n.
+     */
+    public Board getBoard(int n) {
+        int depth = getDepth(n);
+        int[] path = new int[depth];
+        for (int m = n, i = depth - 1; i >= 0; m = parent[m], i--) {
+            path[i] = m;
+        }
+        Board b = new Board(rootBoard);
+        Player p = rootPlayer;
+        for (int m : path) {
+            b.makeMove(p, column[m]);
+            p = p.opponent();
+        }
+        return b;
+    }
+
+    /**
+     * Make the children of node n, whose board is b and at which Player p is
+     * to play: one for each possible move, in column order. n must not
+     * have children yet. b is unchanged when this returns.
+     */
+    void expand(int n, Board b, Player p) {
+        int columns = b.getPossibleColumns();
+        firstChild[n] = size;
+        childCount[n] = (byte) Integer.bitCount(columns);
+        for (int c = 0; c < b.getNumCols(); c++) {
+            if ((columns & (1 << c)) != 0) {
+                b.makeMove(p, c);
+                add(n, c, b.getHash());
+                b.undoMove(c);
+            }
+        }
+    }
+
+    /**
+     * Return a State, with its descendants, for the subtree of this tree
+     * rooted at node n. The States are copies: changing them does not
+     * change this tree. A State takes far more memory than a node, so this
+     * is meant for small subtrees.
+     */
+    public State toState(int n) {
+        return toState(n, getBoard(n), getPlayer(n));
+    }
+
+    /**
+     * Return the State for node n, whose board is b and at which Player p is
+     * to play, with its descendants. The State keeps b.
+     */
+    private State toState(int n, Board b, Player p) {
+        State s = new State(p, b, getLastMove(n));
+        s.setValue(value[n]);
+        State[] children = new State[childCount[n]];
+        for (int i = 0; i < children.length; i++) {
+            int child = firstChild[n] + i;
+            children[i] = toState(child, new Board(b, Move.of(p, column[child])), p.opponent());
+        }
+        s.setChildren(children);
+        return s;
+    }
+
+    /**
+     * Add a node that is a child of node p reached by a move in column c, on
+     * a board with hash h.
+     */
+    private void add(int p, int c, long h) {
+        if (size == parent.length) {
+            int capacity = 2 * size;
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            childCount = Arrays.copyOf(childCount, capacity);
+            column = Arrays.copyOf(column, capacity);
+            value = Arrays.copyOf(value, capacity);
+            key = Arrays.copyOf(key, capacity);
+        }
+        parent[size] = p;
+        column[size] = (byte) c;
+        key[size] = h;
+        size++;
+    }
+}
@@ -0,0 +1,217 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An instance is the shape of a Connect Four board: its number of rows and
+ * columns, with the tables that Boards of that shape share, computed once
+ * per shape. There is one instance per shape, so instances can be compared
+ * with ==.
+ * <p/>
+ * A Board keeps its discs in bitboards of one or two longs (words). Each
+ * column takes rows + 1 consecutive bits of a word, the lowest bit being
+ * the bottom tile of the column; the extra bit on top of each column is
+ * always zero. The first columns that fit go in the first word and the
+ * rest in the second, so a column never straddles two words. The tiles are
+ * numbered by bit: bit b of the second word is tile Long.SIZE + b.
+ */
+public final class Geometry {
+
+    /**
+     * The most columns a board can have. A column must fit in the column
+     * field of a TranspositionTable entry, next to NO_COLUMN.
+     */
+    public static final int MAX_COLS = TranspositionTable.NO_COLUMN;
+
+    /**
+     * The most tiles a board can have: those of two words.
+     */
+    static final int MAX_TILES = 2 * Long.SIZE;
+
+    private static final Map<Integer, Geometry> geometries = new ConcurrentHashMap<>();
+
+    /**
+     * The shape of the standard board, Board.NUM_ROWS by Board.NUM_COLS.
+     */
+    public static final Geometry STANDARD = of(Board.NUM_ROWS, Board.NUM_COLS);
+
+    final int rows;
+    final int cols;
+    final int tiles;
+
+    /**
+     * The number of columns in the first word, and the mask of the bits of
+     * a column that hold tiles, shifted down to the lowest bits.
+     */
+    final int columnsPerWord;
+    final long columnMask;
+
+    /**
+     * The word of each column, and the bit of its bottom tile in that word.
+     */
+    final int[] word;
+    final int[] shift;
+
+    /**
+     * The (row, col) tiles of every line of four tiles on the board, and the
+     * indexes in it of the lines through each tile, indexed by tile.
+     */
+    final int[][][] winLineTiles;
+    final int[][] linesThrough;
+
+    /**
+     * Random bit strings for each player and tile, indexed by the player's
+     * ordinal and then by tile, that are XORed together to hash a position
+     * (Zobrist hashing), and the tile that mirrors each tile across the
+     * center column.
+     */
+    final long[][] zobrist;
+    final int[] mirrorTile;
+
+    /**
+     * The columns ordered from the center out, e.g. 3 2 4 1 5 0 6, and the
+     * mask of the columns up to and including the center one.
+     */
+    final int[] centerOrder;
+    final int leftHalf;
+
+    /**
+     * Return the shape of rows rows and cols columns.
+     * Throw an IllegalArgumentException if there are no tiles, more than
+     * MAX_COLS columns or more columns than fit in two words.
+     */
+    public static Geometry of(int rows, int cols) {
+        if (rows < 1 || cols < 1 || cols > MAX_COLS || rows >= Long.SIZE
+                || cols > 2 * (Long.SIZE / (rows + 1)))
+            throw new IllegalArgumentException("A board cannot have " + rows + " rows and "
+                    + cols + " columns");
+        return geometries.computeIfAbsent(rows * (MAX_COLS + 1) + cols, k -> new Geometry(rows, cols));
+    }
+
+    /**
+     * Constructor: the shape of rows rows and cols columns.
+     */
+    private Geometry(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        tiles = rows * cols;
+        int columnBits = rows + 1;
+        columnsPerWord = Math.min(cols, Long.SIZE / columnBits);
+        columnMask = (1L << rows) - 1;
+        word = new int[cols];
+        shift = new int[cols];
+        for (int c = 0; c < cols; c++) {
+            word[c] = c / columnsPerWord;
+            shift[c] = c % columnsPerWord * columnBits;
+        }
+        int tileCount = word[cols - 1] * Long.SIZE + shift[cols - 1] + columnBits;
+
+        mirrorTile = new int[tileCount];
+        for (int c = 0; c < cols; c++) {
+            for (int h = 0; h < columnBits; h++) {
+                mirrorTile[tile(c, h)] = tile(cols - 1 - c, h);
+            }
+        }
+
+        /*
+         * The standard board keeps the seed its hashes have always had, so
+         * that opening books and position stores stay valid.
+         */
+        Random random = new Random(rows == Board.NUM_ROWS && cols == Board.NUM_COLS
+                ? 4 : (long) rows << 32 | cols);
+        zobrist = new long[Player.values().length][tileCount];
+        for (long[] keys : zobrist) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextLong();
+            }
+        }
+
+        List<int[][]> lines = new ArrayList<>();
+        for (int[] delta : Board.deltas) {
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    int endR = r + (Board.FOUR - 1) * delta[0];
+                    int endC = c + (Board.FOUR - 1) * delta[1];
+                    if (0 <= endR && endR < rows && endC < cols) {
+                        int[][] line = new int[Board.FOUR][];
+                        for (int i = 0; i < Board.FOUR; i++) {
+                            line[i] = new int[]{r + i * delta[0], c + i * delta[1]};
+                        }
+                        lines.add(line);
+                    }
+                }
+            }
+        }
+        winLineTiles = lines.toArray(new int[lines.size()][][]);
+        List<List<Integer>> through = new ArrayList<>();
+        for (int t = 0; t < tileCount; t++) {
+            through.add(new ArrayList<>());
+        }
+        for (int i = 0; i < winLineTiles.length; i++) {
+            for (int[] tile : winLineTiles[i]) {
+                through.get(tile(tile[1], rows - 1 - tile[0])).add(i);
+            }
+        }
+        linesThrough = new int[tileCount][];
+        for (int t = 0; t < tileCount; t++) {
+            linesThrough[t] = new int[through.get(t).size()];
+            for (int i = 0; i < linesThrough[t].length; i++) {
+                linesThrough[t][i] = through.get(t).get(i);
+            }
+        }
+
+        centerOrder = new int[cols];
+        for (int i = 0; i < cols; i++) {
+            int offset = (i + 1) / 2;
+            centerOrder[i] = cols / 2 + (i % 2 == 0 ? offset : -offset);
+        }
+        leftHalf = (1 << (cols + 1) / 2) - 1;
+    }
+
+    /**
+     * Return the number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Return the number of columns.
+     */
+    public int getColumns() {
+        return cols;
+    }
+
+    /**
+     * Return the number of words a bitboard of this shape takes, 1 or 2.
+     */
+    public int getWords() {
+        return word[cols - 1] + 1;
+    }
+
+    /**
+     * Return the tile h tiles above the bottom of column col.
+     */
+    int tile(int col, int h) {
+        return word[col] * Long.SIZE + shift[col] + h;
+    }
+
+    /**
+     * Return the column that mirrors column c across the center.
+     */
+    int mirror(int c) {
+        return cols - 1 - c;
+    }
+
+    /**
+     * Return a representation of this shape, e.g. "6x7" (rows x columns).
+     */
+    @Override
+    public String toString() {
+        return rows + "x" + cols;
+    }
+}
@@ -1,6 +1,6 @@
 package game;
 
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.CompletableFuture;
 
 /**  NOTHING FOR YOU TO DO HERE. */
 
@@ -10,15 +10,14 @@ import java.util.concurrent.Semaphore;
 public class Human implements Solver {
 
     private Player player; // The player
-    private Semaphore waitSema;  // Used to wait for a move by the human
-    private int nextColumn;      // Place to put next piece
+    private CompletableFuture<Move[]> request;  // The move wanted, or null
+    private int clicked = -1;    // A column clicked before its move was wanted, or -1
 
     /**
      * Construct a Human Solver for player p.
      */
     public Human(Player p) {
         player = p;
-        waitSema = new Semaphore(0);
     }
 
     /**
@@ -26,12 +25,28 @@ public class Human implements Solver {
      */
     @Override
     public Move[] getMoves(Board b) {
-        try {
-            waitSema.acquire();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        return getMovesAsync(b).join();
+    }
+
+    /**
+     * See Solver.getMovesAsync for the specification. The future completes
+     * when the user next clicks a column; no thread waits for the click. A
+     * click when no move is wanted (as just after the opponent's move), or
+     * after the future is cancelled, is kept for the next request, which
+     * then completes at once. Only the last such click is kept.
+     */
+    @Override
+    public synchronized CompletableFuture<Move[]> getMovesAsync(Board b) {
+        if (request != null)
+            request.cancel(false);
+        request = null;
+        if (clicked >= 0) {
+            Move[] moves = {Move.of(player, clicked)};
+            clicked = -1;
+            return CompletableFuture.completedFuture(moves);
         }
-        return new Move[]{new Move(player, nextColumn)};
+        request = new CompletableFuture<>();
+        return request;
     }
 
     /**
@@ -39,8 +54,16 @@ public class Human implements Solver {
      * a piece in column c.
      */
     public void columnClicked(int c) {
-        nextColumn = c;
-        waitSema.release();
+        CompletableFuture<Move[]> r;
+        synchronized (this) {
+            r = request;
+            request = null;
+            if (r == null || r.isDone()) {
+                clicked = c;
+                return;
+            }
+        }
+        r.complete(new Move[]{Move.of(player, c)});
     }
 
 }
@@ -2,27 +2,54 @@ package game;
 /**
  * An instance represents a player and a column number, so that when this move
  * is applied to a Board object, this Move's player will place a piece in
- * this Move's column in the Board.
+ * this Move's column in the Board. Moves are immutable, so the instances
+ * returned by Move.of can be shared freely.
  */
 
 public class Move {
-    private Player player;  // player is playing
-    private int column;           // in this column
+    /**
+     * One shared Move for each player and column, indexed by the player's
+     * ordinal and then by column.
+     */
+    private static final Move[][] moves = new Move[Player.values().length][Geometry.MAX_COLS];
+
+    static {
+        for (Player p : Player.values()) {
+            for (int c = 0; c < Geometry.MAX_COLS; c++) {
+                moves[p.ordinal()][c] = new Move(p, c);
+            }
+        }
+    }
+
+    private final Player player;  // player is playing
+    private final int column;           // in this column
 
     /**
      * Constructor: an instance with player p playing in column c.
-     * Precondition p != null and c in 0..Board.NUM_COLS-1.
+     * Precondition p != null and c in 0..Geometry.MAX_COLS-1.
      */
     public Move(Player p, int c) {
         if (p == null) {
             throw new IllegalArgumentException("Cannot create a Move with a null player");
         }
-        if (c < 0 || Board.NUM_COLS <= c) {
+        if (c < 0 || Geometry.MAX_COLS <= c) {
             throw new IllegalArgumentException("Cannot create a Move with column that " +
-                    "is not in 0..Board.NUM_COLS-1");
+                    "is not in 0..Geometry.MAX_COLS-1");
+        }
+        column = c;
+        player = p;
+    }
+
+    /**
+     * Return the shared instance with player p playing in column c.
+     * Precondition p != null and c in 0..Geometry.MAX_COLS-1.
+     */
+    public static Move of(Player p, int c) {
+        if (p == null || c < 0 || Geometry.MAX_COLS <= c) {
+            // let the constructor report the bad argument
+            return new Move(p, c);
         }
-        setColumn(c);
-        setPlayer(p);
+        return moves[p.ordinal()][c];
     }
 
     /**
@@ -41,14 +68,6 @@ public class Move {
         return player;
     }
 
-    /**
-     *
-     * @param player   the player
-     */
-    public void setPlayer(Player player) {
-        this.player = player;
-    }
-
     /**
      *
      * @return  which column
@@ -56,12 +75,4 @@ public class Move {
     public int getColumn() {
         return column;
     }
-
-    /**
-     *
-     * @param column
-     */
-    public void setColumn(int column) {
-        this.column = column;
-    }
 }
@@ -0,0 +1,159 @@
+package game;
+
+/**
+ * An instance decides the order in which a search tries the moves at each
+ * position. Alpha-beta pruning cuts off the most when the best move is tried
+ * first, so moves are tried in this order:
+ * <p/>
+ *   1. the best move found for the position before (from the transposition table),
+ *   2. the two killer moves: the latest moves that caused a cut off at the same ply,
+ *   3. the other moves, by how often they have caused cut offs (history),
+ *   4. ties broken center column first, since central discs are on more lines.
+ * <p/>
+ * An instance belongs to one search thread.
+ */
+class MoveOrdering {
+
+    /**
+     * The deepest ply a search can reach: one ply per tile, plus the root.
+     */
+    private static final int MAX_PLY = Geometry.MAX_TILES + 1;
+
+    /*
+     * Sort keys of the move categories. History scores are kept below
+     * KILLER_2 so that they never outrank a killer.
+     */
+    private static final int TABLE_MOVE = 3 << 28;
+    private static final int KILLER_1 = 2 << 28;
+    private static final int KILLER_2 = 1 << 28;
+    private static final int MAX_HISTORY = (1 << 28) - 1;
+
+    /**
+     * The moves at each ply, in the order to try them, and their sort keys.
+     */
+    private final int[][] moves = new int[MAX_PLY][Geometry.MAX_COLS];
+    private final int[] keys = new int[Geometry.MAX_COLS];
+
+    /**
+     * The two killer moves at each ply (-1 if there is none).
+     */
+    private final int[][] killers = new int[MAX_PLY][2];
+
+    /**
+     * How much each move has caused cut offs, indexed by the ordinal of the
+     * player making it and then by column.
+     */
+    private final int[][] history = new int[Player.values().length][Geometry.MAX_COLS];
+
+    private long cutoffs;            // cut offs seen
+    private long firstMoveCutoffs;   // cut offs caused by the first move tried
+
+    /**
+     * Constructor: an instance with no killer moves or history.
+     */
+    MoveOrdering() {
+        newSearch();
+    }
+
+    /**
+     * Prepare for a new search: forget the killer moves, which belong to the
+     * plies of the previous search, and halve the history so recent cut
+     * offs count the most.
+     */
+    void newSearch() {
+        for (int[] k : killers) {
+            k[0] = -1;
+            k[1] = -1;
+        }
+        for (int[] h : history) {
+            for (int c = 0; c < h.length; c++) {
+                h[c] /= 2;
+            }
+        }
+    }
+
+    /**
+     * Order the moves in mask columns that Player p can make at ply ply on
+     * a board of shape g, trying column tableColumn first if it is one of
+     * them. Return the number of moves; the moves are then in moves(ply).
+     */
+    int order(int ply, int columns, int tableColumn, Player p, Geometry g) {
+        int[] list = moves[ply];
+        int[] h = history[p.ordinal()];
+        int n = 0;
+        for (int c : g.centerOrder) {
+            if ((columns & (1 << c)) == 0)
+                continue;
+            int key = c == tableColumn ? TABLE_MOVE
+                    : c == killers[ply][0] ? KILLER_1
+                    : c == killers[ply][1] ? KILLER_2
+                    : h[c];
+            /*
+             * Insertion sort by key, highest first. Equal keys stay in
+             * center order.
+             */
+            int i = n++;
+            while (i > 0 && keys[i - 1] < key) {
+                list[i] = list[i - 1];
+                keys[i] = keys[i - 1];
+                i--;
+            }
+            list[i] = c;
+            keys[i] = key;
+        }
+        return n;
+    }
+
+    /**
+     * Return the moves at ply ply, as ordered by the last call to order.
+     */
+    int[] moves(int ply) {
+        return moves[ply];
+    }
+
+    /**
+     * Record that the move in column c by Player p, the i-th move tried at
+     * ply ply with d moves left to search, caused a cut off.
+     */
+    void cutoff(int ply, int c, int d, Player p, int i) {
+        cutoffs++;
+        if (i == 0)
+            firstMoveCutoffs++;
+        if (killers[ply][0] != c) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = c;
+        }
+        int[] h = history[p.ordinal()];
+        h[c] += d * d;
+        if (h[c] > MAX_HISTORY) {
+            for (int[] row : history) {
+                for (int col = 0; col < row.length; col++) {
+                    row[col] /= 2;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the cut offs recorded by o to those recorded by this instance.
+     */
+    void addStatistics(MoveOrdering o) {
+        cutoffs += o.cutoffs;
+        firstMoveCutoffs += o.firstMoveCutoffs;
+    }
+
+    /**
+     * Return the number of cut offs recorded.
+     */
+    long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * Return the fraction of the cut offs recorded that the first move
+     * tried caused, 0 if there have been none.
+     */
+    double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+}
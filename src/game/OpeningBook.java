@@ -0,0 +1,232 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An instance is a read-only book of opening positions and their best
+ * moves, loaded from a file written by OpeningBookGenerator. The file is
+ * memory-mapped rather than read, so a book loads at once and takes no
+ * heap however large it is; the operating system pages in the parts that
+ * are looked up.
+ * <p/>
+ * The file is a header followed by one record per position, sorted by key
+ * so that a position is found by binary search:
+ * <p/>
+ *   header: int MAGIC, int VERSION, long number of records
+ *   record: long key, long data word
+ * <p/>
+ * The key of a position is the smaller of its hash and its mirror image's
+ * hash (see Board.getMirrorHash), XORed with a constant when Player.YELLOW
+ * is to play. The data word holds the value of the best moves for the
+ * player to play, the depth they were searched to and their columns, as
+ * seen on the board with the smaller hash. Use score, depth and columns to
+ * read its fields.
+ */
+public class OpeningBook {
+
+    /**
+     * The first int of a book file, and the version of its format.
+     */
+    static final int MAGIC = 0x43344F42;  // "C4OB"
+    static final int VERSION = 1;
+
+    /**
+     * The result of probe when the position is not in the book.
+     */
+    public static final long MISS = 0;
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES;
+    private static final int RECORD_BYTES = 2 * Long.BYTES;
+
+    /*
+     * Layout of a data word, from the lowest bit up:
+     *   32 bits score, 8 bits depth, 7 bits columns, 1 bit set
+     * The set bit keeps stored words different from MISS.
+     */
+    private static final int DEPTH_SHIFT = 32;
+    private static final int COLUMNS_SHIFT = 40;
+    private static final long SET_BIT = 1L << 47;
+
+    /**
+     * The records of the book, and the number of them.
+     */
+    private final MappedByteBuffer records;
+    private final int size;
+
+    /**
+     * Constructor: the book in file f.
+     * Throws an IOException if f cannot be read, and an
+     * IllegalArgumentException if it is not a book file.
+     */
+    public OpeningBook(Path f) throws IOException {
+        try (FileChannel channel = FileChannel.open(f, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IllegalArgumentException(f + " is not an opening book");
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalArgumentException(f + " is not an opening book");
+            }
+            long n = header.getLong();
+            if (n < 0 || n > Integer.MAX_VALUE / RECORD_BYTES
+                    || channel.size() != HEADER_BYTES + n * RECORD_BYTES) {
+                throw new IllegalArgumentException(f + " is not a complete opening book");
+            }
+            size = (int) n;
+            /*
+             * The mapping stays valid after the channel is closed.
+             */
+            records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, n * RECORD_BYTES);
+        }
+    }
+
+    /**
+     * Return the number of positions in this book.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the data word of the position on Board b with Player p to play,
+     * with its columns mirrored if needed so that they are columns of b, or
+     * MISS if the position is not in this book. A book holds only positions
+     * of the standard board.
+     */
+    public long probe(Board b, Player p) {
+        if (b.getGeometry() != Geometry.STANDARD)
+            return MISS;
+        long hash = b.getHash();
+        long mirrorHash = b.getMirrorHash();
+        long word = find(key(hash, mirrorHash, p));
+        if (word == MISS || mirrorHash >= hash)
+            return word;
+        return (word & ~(0x7FL << COLUMNS_SHIFT)) | ((long) mirror(columns(word)) << COLUMNS_SHIFT);
+    }
+
+    /**
+     * Return the data word stored with key, or MISS if there is none.
+     */
+    private long find(long key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long k = records.getLong(mid * RECORD_BYTES);
+            if (k < key) {
+                low = mid + 1;
+            } else if (k > key) {
+                high = mid - 1;
+            } else {
+                return records.getLong(mid * RECORD_BYTES + Long.BYTES);
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Return the score field of data word w: the value of the best moves for
+     * the player to play.
+     */
+    public static int score(long w) {
+        return (int) w;
+    }
+
+    /**
+     * Return the depth field of data word w.
+     */
+    public static int depth(long w) {
+        return (int) (w >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    /**
+     * Return the columns field of data word w: the columns of the best moves
+     * as a bit mask.
+     */
+    public static int columns(long w) {
+        return (int) (w >>> COLUMNS_SHIFT) & 0x7F;
+    }
+
+    /**
+     * Return the key of the position on Board b with Player p to play, and,
+     * in the same way, of its mirror image.
+     */
+    static long key(Board b, Player p) {
+        return key(b.getHash(), b.getMirrorHash(), p);
+    }
+
+    /**
+     * Return the key of the position with hash hash and mirror hash
+     * mirrorHash, with Player p to play.
+     */
+    private static long key(long hash, long mirrorHash, Player p) {
+        return Math.min(hash, mirrorHash) ^ (p == Player.YELLOW ? Search.YELLOW_TO_PLAY : 0);
+    }
+
+    /**
+     * Return the data word for best moves in mask columns, of value s, found
+     * by a search to depth d. columns must be as seen on the board whose
+     * hash is the smaller of its hash and its mirror image's.
+     */
+    static long word(int columns, int s, int d) {
+        return (s & 0xFFFFFFFFL) | ((long) d << DEPTH_SHIFT)
+                | ((long) columns << COLUMNS_SHIFT) | SET_BIT;
+    }
+
+    /**
+     * Return mask columns with each column replaced by its mirror image.
+     */
+    static int mirror(int columns) {
+        int mirrored = 0;
+        for (int c = 0; c < Board.NUM_COLS; c++) {
+            if ((columns & (1 << c)) != 0)
+                mirrored |= 1 << (Board.NUM_COLS - 1 - c);
+        }
+        return mirrored;
+    }
+
+    /**
+     * Write the positions in entries, which maps keys to data words, to file
+     * f as a book, replacing f if it exists.
+     */
+    static void write(Path f, Map<Long, Long> entries) throws IOException {
+        long[] keys = new long[entries.size()];
+        int n = 0;
+        for (long key : entries.keySet()) {
+            keys[n++] = key;
+        }
+        Arrays.sort(keys);
+        try (FileChannel channel = FileChannel.open(f, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(keys.length);
+            for (long key : keys) {
+                if (buffer.remaining() < RECORD_BYTES) {
+                    drain(buffer, channel);
+                }
+                buffer.putLong(key).putLong(entries.get(key));
+            }
+            drain(buffer, channel);
+        }
+    }
+
+    /**
+     * Write the contents of buffer to channel and empty buffer.
+     */
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
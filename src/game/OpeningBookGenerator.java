@@ -0,0 +1,115 @@
+package game;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes an OpeningBook: every position that can arise in the first few
+ * moves of a game, whichever player starts, with the best moves found by
+ * searching it to a fixed depth. Positions that are mirror images of each
+ * other are searched and stored once.
+ * <p/>
+ * Usage: java game.OpeningBookGenerator file [plies [depth]]
+ */
+public class OpeningBookGenerator {
+
+    private final int plies;
+    private final int depth;
+
+    /**
+     * The positions found so far, from their keys to their data words (see
+     * OpeningBook).
+     */
+    private final Map<Long, Long> entries = new HashMap<>();
+
+    /**
+     * The table and move ordering shared by the searches, so that each
+     * search benefits from the positions searched before it.
+     */
+    private final TranspositionTable table = new TranspositionTable(AI.DEFAULT_TABLE_MB * 4,
+            TranspositionTable.Replacement.DEPTH_PREFERRED);
+    private final MoveOrdering ordering = new MoveOrdering();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java game.OpeningBookGenerator file [plies [depth]]");
+            return;
+        }
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+        long start = System.nanoTime();
+        int n = generate(Paths.get(args[0]), plies, depth);
+        System.out.printf("%,d positions up to ply %d searched to depth %d in %.1f s%n",
+                n, plies, depth, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Constructor: a generator of a book of the positions after at most
+     * plies moves, searched to depth depth.
+     */
+    private OpeningBookGenerator(int plies, int depth) {
+        this.plies = plies;
+        this.depth = depth;
+    }
+
+    /**
+     * Write to file f a book of the positions after at most plies moves,
+     * searched to depth d, and return the number of positions in it.
+     * Precondition: plies >= 0 and 1 <= d < 256.
+     */
+    public static int generate(Path f, int plies, int d) throws IOException {
+        if (plies < 0 || d < 1 || d > 255) {
+            throw new IllegalArgumentException("Cannot generate a book of " + plies
+                    + " plies searched to depth " + d);
+        }
+        OpeningBookGenerator generator = new OpeningBookGenerator(plies, d);
+        for (Player first : Player.values()) {
+            generator.add(new Board(), first);
+        }
+        OpeningBook.write(f, generator.entries);
+        return generator.entries.size();
+    }
+
+    /**
+     * Add to the book the position on Board b, with Player p to play, and
+     * the positions that follow it up to ply plies, unless it is there
+     * already. b is unchanged when this returns.
+     */
+    private void add(Board b, Player p) {
+        long key = OpeningBook.key(b, p);
+        int columns = b.getPossibleColumns();
+        if (columns == 0 || entries.containsKey(key))
+            return;
+        entries.put(key, search(b, p, columns));
+        if (b.getMoveCount() == plies)
+            return;
+        for (int c = 0; c < Board.NUM_COLS; c++) {
+            if ((columns & (1 << c)) != 0) {
+                b.makeMove(p, c);
+                add(b, p.opponent());
+                b.undoMove(c);
+            }
+        }
+    }
+
+    /**
+     * Return the data word of the position on Board b, with Player p to play
+     * and possible moves in mask columns, searching one move deeper at a
+     * time as AI does.
+     */
+    private long search(Board b, Player p, int columns) {
+        Search search = new Search(new Board(b), table, ordering, null);
+        int maxDepth = Math.min(depth, Board.NUM_ROWS * Board.NUM_COLS - b.getMoveCount());
+        int bestColumns = 0;
+        ordering.newSearch();
+        for (int d = 1; d <= maxDepth; d++) {
+            bestColumns = search.searchRoot(p, d, columns, bestColumns);
+        }
+        if (b.getMirrorHash() < b.getHash())
+            bestColumns = OpeningBook.mirror(bestColumns);
+        return OpeningBook.word(bestColumns, search.getRootValue(), maxDepth);
+    }
+}
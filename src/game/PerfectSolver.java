@@ -0,0 +1,401 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An instance represents a Solver that plays perfectly: rather than
+ * evaluating boards a few moves ahead, it searches every position to the
+ * end of the game and knows whether each move wins, draws or loses, and
+ * how soon.
+ * <p/>
+ * The search follows the well-known Connect Four solvers: negamax with
+ * alpha-beta pruning on bitboards, narrowed to the exact score by a series
+ * of null-window searches. Moves that would let the opponent win at once
+ * are never searched, moves that make the most new threats are tried
+ * first, and results are cached in a transposition table that is kept
+ * between calls to getMoves.
+ * <p/>
+ * Scores are seen from the side of the player to play. A draw is 0. A win
+ * is positive and larger the sooner it comes: a player who wins with
+ * their k-th disc scores NUM_ROWS * NUM_COLS / 2 + 1 - k. A loss is minus
+ * the opponent's winning score. pliesToEnd turns a score into the number of
+ * moves the game lasts with perfect play.
+ * <p/>
+ * The bitboard tricks the solver relies on assume a single word, laid out
+ * as on the standard board, so it only solves boards of the standard size.
+ */
+public class PerfectSolver implements Solver {
+
+    private static final int WIDTH = Board.NUM_COLS;
+    private static final int HEIGHT = Board.NUM_ROWS;
+    private static final int SIZE = WIDTH * HEIGHT;
+
+    /**
+     * The lowest and highest scores there can be: losing to, and winning
+     * with, a fourth disc.
+     */
+    private static final int MIN_SCORE = -SIZE / 2 + 3;
+    private static final int MAX_SCORE = (SIZE + 1) / 2 - 3;
+
+    /*
+     * Bitboards use the layout of Board: column col takes bits
+     * col * (HEIGHT + 1) up to col * (HEIGHT + 1) + HEIGHT - 1, from the
+     * bottom up, and the bit above each column is always zero.
+     */
+    private static final long COLUMN_BITS = (1L << (HEIGHT + 1)) - 1;
+    private static final long BOTTOM_MASK;
+    private static final long BOARD_MASK;
+
+    static {
+        long bottom = 0;
+        for (int col = 0; col < WIDTH; col++) {
+            bottom |= 1L << (col * (HEIGHT + 1));
+        }
+        BOTTOM_MASK = bottom;
+        BOARD_MASK = bottom * ((1L << HEIGHT) - 1);
+    }
+
+    /**
+     * The number of entries of the transposition table, a prime so that
+     * keys spread over all of it.
+     */
+    private static final int TABLE_SIZE = 8388593;
+
+    private final Player player; // the current player
+
+    /**
+     * The transposition table. An entry holds a key (see negamax) shifted
+     * left by 8 bits and, in the low 8 bits, a bound on the score of the
+     * position: an upper bound v is stored as v - MIN_SCORE + 1 and a lower
+     * bound v as v + MAX_SCORE - 2 * MIN_SCORE + 2, so neither is 0 and
+     * the two ranges do not overlap.
+     */
+    private final long[] table = new long[TABLE_SIZE];
+
+    /**
+     * The moves to try at each number of discs on the board, and their
+     * scores, in the order to try them (see negamax).
+     */
+    private final long[][] moves = new long[SIZE][WIDTH];
+    private final int[][] scores = new int[SIZE][WIDTH];
+
+    /**
+     * The number of positions visited by the searches of this solver.
+     */
+    private long nodes;
+
+    /**
+     * Constructor: an instance with player p.
+     */
+    public PerfectSolver(Player p) {
+        player = p;
+    }
+
+    /**
+     * Return the number of positions visited by the searches of this solver.
+     */
+    public long getNodesSearched() {
+        return nodes;
+    }
+
+    /**
+     * See Solver.getMoves for the specification. The moves returned are
+     * those with the best score.
+     * Throw an IllegalArgumentException if b is not of the standard size.
+     */
+    @Override
+    public Move[] getMoves(Board b) {
+        checkGeometry(b);
+        int columns = b.getPossibleColumns();
+        if (columns == 0)
+            return new Move[] {};
+        long current = b.getDiscs(player);
+        long mask = current | b.getDiscs(player.opponent());
+        int numMoves = b.getMoveCount();
+        int best = solve(current, mask, numMoves);
+        /*
+         * A move is among the best if the opponent's score after it is at
+         * most -best, which one null-window search decides.
+         */
+        List<Move> bestMoves = new ArrayList<>();
+        for (int c = 0; c < WIDTH; c++) {
+            if ((columns & (1 << c)) == 0)
+                continue;
+            long move = (mask + BOTTOM_MASK) & columnMask(c);
+            boolean isBest;
+            if ((winningPosition(current, mask) & move) != 0) {
+                isBest = (SIZE + 1 - numMoves) / 2 == best;
+            } else {
+                long childCurrent = current ^ mask;
+                long childMask = mask | move;
+                if (canWinNext(childCurrent, childMask)) {
+                    isBest = -(SIZE - numMoves) / 2 == best;
+                } else {
+                    isBest = negamax(childCurrent, childMask, numMoves + 1, -best, -best + 1) <= -best;
+                }
+            }
+            if (isBest)
+                bestMoves.add(Move.of(player, c));
+        }
+        return bestMoves.toArray(new Move[] {});
+    }
+
+    /**
+     * Return the score of Board b for Player p, who is to play on it.
+     * Throw an IllegalArgumentException if b is not of the standard size.
+     * Precondition: the game on b is not over.
+     */
+    public int solve(Board b, Player p) {
+        checkGeometry(b);
+        if (b.getPossibleColumns() == 0) {
+            throw new IllegalArgumentException("The game is over.");
+        }
+        long current = b.getDiscs(p);
+        return solve(current, current | b.getDiscs(p.opponent()), b.getMoveCount());
+    }
+
+    /**
+     * Throw an IllegalArgumentException if Board b is not of the standard
+     * size.
+     */
+    private static void checkGeometry(Board b) {
+        if (b.getGeometry() != Geometry.STANDARD)
+            throw new IllegalArgumentException("Only boards of the standard size can be solved");
+    }
+
+    /**
+     * Return the number of moves, counting the next one, that the game on
+     * Board b lasts if both players play perfectly from a position whose
+     * score is score.
+     */
+    public static int pliesToEnd(Board b, int score) {
+        int numMoves = b.getMoveCount();
+        if (score == 0)
+            return SIZE - numMoves;
+        /*
+         * The winning disc is placed by the player to play if score > 0 and
+         * by the opponent otherwise, when there are last discs on the board:
+         * the score of a win with last discs already there is
+         * (SIZE + 1 - last) / 2.
+         */
+        int parity = (numMoves + (score > 0 ? 0 : 1)) % 2;
+        int last = SIZE + 1 - 2 * Math.abs(score);
+        if (last % 2 != parity)
+            last--;
+        return last - numMoves + 1;
+    }
+
+    /**
+     * Return the score of the position in which the player to play has the
+     * discs in bitboard current, mask is the bitboard of all discs, and
+     * numMoves discs have been played.
+     */
+    private int solve(long current, long mask, int numMoves) {
+        if (canWinNext(current, mask))
+            return (SIZE + 1 - numMoves) / 2;
+        int min = -(SIZE - numMoves) / 2;
+        int max = (SIZE + 1 - numMoves) / 2;
+        /*
+         * Narrow [min, max] down to the score with null-window searches, each
+         * of which tells whether the score is above a value. Values nearer 0
+         * are tried first, since those searches are the fastest.
+         */
+        while (min < max) {
+            int med = min + (max - min) / 2;
+            if (med <= 0 && min / 2 < med)
+                med = min / 2;
+            else if (med >= 0 && max / 2 > med)
+                med = max / 2;
+            int r = negamax(current, mask, numMoves, med, med + 1);
+            if (r <= med)
+                max = r;
+            else
+                min = r;
+        }
+        return min;
+    }
+
+    /**
+     * Return the score of the position (see solve), searched with alpha-beta
+     * pruning in window (alpha, beta): exact if strictly between alpha and
+     * beta, otherwise a bound on the same side of the window as the score.
+     * Precondition: alpha < beta and the player to play cannot win at once.
+     */
+    private int negamax(long current, long mask, int numMoves, int alpha, int beta) {
+        nodes++;
+        long next = possibleNonLosingMoves(current, mask);
+        /*
+         * If every move lets the opponent win, the opponent wins next.
+         */
+        if (next == 0)
+            return -(SIZE - numMoves) / 2;
+        /*
+         * With two tiles left, neither player can win any more.
+         */
+        if (numMoves >= SIZE - 2)
+            return 0;
+        /*
+         * The opponent cannot win with their next disc, so the score is above
+         * that of a loss then; and the player cannot win with this disc.
+         */
+        int min = -(SIZE - 2 - numMoves) / 2;
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta)
+                return alpha;
+        }
+        int max = (SIZE - 1 - numMoves) / 2;
+        /*
+         * The key current + mask is unique to the position: it is mask with
+         * the bit above each column's top disc set, and current's bits. A
+         * position and its mirror image have the same score, so both are
+         * stored under the smaller of their keys.
+         */
+        long key = current + mask;
+        key = Math.min(key, mirror(key));
+        int value = probe(key);
+        if (value > MAX_SCORE - MIN_SCORE + 1) {
+            min = value + 2 * MIN_SCORE - MAX_SCORE - 2;
+            if (alpha < min) {
+                alpha = min;
+                if (alpha >= beta)
+                    return alpha;
+            }
+        } else if (value != 0) {
+            max = Math.min(max, value + MIN_SCORE - 1);
+        }
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta)
+                return beta;
+        }
+        /*
+         * Try first the moves that make the most new threats, ties center
+         * column first.
+         */
+        long[] list = moves[numMoves];
+        int[] keys = scores[numMoves];
+        int n = 0;
+        for (int c : Geometry.STANDARD.centerOrder) {
+            long move = next & columnMask(c);
+            if (move == 0)
+                continue;
+            int score = Long.bitCount(winningPosition(current | move, mask));
+            int i = n++;
+            while (i > 0 && keys[i - 1] < score) {
+                list[i] = list[i - 1];
+                keys[i] = keys[i - 1];
+                i--;
+            }
+            list[i] = move;
+            keys[i] = score;
+        }
+        for (int i = 0; i < n; i++) {
+            long move = list[i];
+            int score = -negamax(current ^ mask, mask | move, numMoves + 1, -beta, -alpha);
+            if (score >= beta) {
+                store(key, score + MAX_SCORE - 2 * MIN_SCORE + 2);
+                return score;
+            }
+            if (score > alpha)
+                alpha = score;
+        }
+        store(key, alpha - MIN_SCORE + 1);
+        return alpha;
+    }
+
+    /**
+     * Return the stored bound of the position with key key, or 0 if there
+     * is none.
+     */
+    private int probe(long key) {
+        long entry = table[(int) (key % TABLE_SIZE)];
+        return entry >>> 8 == key ? (int) entry & 0xFF : 0;
+    }
+
+    /**
+     * Store bound value for the position with key key, replacing the entry
+     * there.
+     */
+    private void store(long key, int value) {
+        table[(int) (key % TABLE_SIZE)] = key << 8 | value;
+    }
+
+    /**
+     * Return true if the player to play can win with their next disc.
+     */
+    private static boolean canWinNext(long current, long mask) {
+        return (winningPosition(current, mask) & possible(mask)) != 0;
+    }
+
+    /**
+     * Return the moves of the player to play that do not let the opponent
+     * win with their next disc, as a bitboard of the tiles played. If the
+     * opponent threatens to win, the only such move is the one that blocks
+     * the threat, and if there are two threats there is none.
+     * Precondition: the player to play cannot win at once.
+     */
+    private static long possibleNonLosingMoves(long current, long mask) {
+        long possible = possible(mask);
+        long opponentWins = winningPosition(current ^ mask, mask);
+        long forced = possible & opponentWins;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0)
+                return 0;
+            possible = forced;
+        }
+        return possible & ~(opponentWins >> 1);
+    }
+
+    /**
+     * Return the bitboard of the tiles where a disc can be played next.
+     */
+    private static long possible(long mask) {
+        return (mask + BOTTOM_MASK) & BOARD_MASK;
+    }
+
+    /**
+     * Return the bitboard of the empty tiles that would complete four in a
+     * line of the discs in bitboard discs, whether playable now or not.
+     */
+    private static long winningPosition(long discs, long mask) {
+        long r = (discs << 1) & (discs << 2) & (discs << 3);  // vertical
+        r |= lineEnds(discs, HEIGHT + 1);  // horizontal
+        r |= lineEnds(discs, HEIGHT);      // downhill
+        r |= lineEnds(discs, HEIGHT + 2);  // uphill
+        return r & (BOARD_MASK ^ mask);
+    }
+
+    /**
+     * Return the bitboard of the tiles that complete four in a line of the
+     * discs in bitboard discs, along lines whose tiles are shift bits apart.
+     */
+    private static long lineEnds(long discs, int shift) {
+        long p = (discs << shift) & (discs << 2 * shift);
+        long r = p & (discs << 3 * shift);
+        r |= p & (discs >>> shift);
+        p = (discs >>> shift) & (discs >>> 2 * shift);
+        r |= p & (discs << shift);
+        r |= p & (discs >>> 3 * shift);
+        return r;
+    }
+
+    /**
+     * Return bitboard b with its columns in reverse order.
+     */
+    private static long mirror(long b) {
+        long m = 0;
+        for (int col = 0; col < WIDTH; col++) {
+            m |= ((b >>> (col * (HEIGHT + 1))) & COLUMN_BITS) << ((WIDTH - 1 - col) * (HEIGHT + 1));
+        }
+        return m;
+    }
+
+    /**
+     * Return the bitboard of the tiles of column col.
+     */
+    private static long columnMask(int col) {
+        return ((1L << HEIGHT) - 1) << (col * (HEIGHT + 1));
+    }
+}
@@ -0,0 +1,429 @@
+package game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An instance is a store of search results that lasts between runs: the
+ * best moves found for a position, their value and the depth searched,
+ * kept on disk and shared by every AI that uses the store.
+ * <p/>
+ * Results are appended to a log file, which is never rewritten, and found
+ * through an index file next to it (the log's path plus ".idx"). The index
+ * is an open-addressing hash table that is memory-mapped, so opening a
+ * store reads only the log records written since the index was last
+ * brought up to date. If the index is missing or does not match the log,
+ * it is rebuilt from the log.
+ * <p/>
+ * Each log record carries a check word, so that a record torn by a crash
+ * in the middle of a write is detected. When a store is opened, the log is
+ * cut back to the end of its last whole, valid record.
+ * <p/>
+ * Results are written by a background thread: put returns at once. Keys
+ * and data words are those of OpeningBook, so a position and its mirror
+ * image share an entry. Of two results for the same position, the store
+ * keeps the deeper one. A store can be read by several threads at once.
+ */
+public class PositionStore implements Closeable {
+
+    /**
+     * The result of probe when the position is not in the store.
+     */
+    public static final long MISS = 0;
+
+    /**
+     * The first ints of the log and index files.
+     */
+    private static final int LOG_MAGIC = 0x43345053;    // "C4PS"
+    private static final int INDEX_MAGIC = 0x43345049;  // "C4PI"
+    private static final int VERSION = 1;
+
+    /*
+     * The log is a header (int LOG_MAGIC, int VERSION) followed by records
+     * of a key, a data word and the check word key ^ data ^ CHECK.
+     */
+    private static final int LOG_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int RECORD_BYTES = 3 * Long.BYTES;
+    private static final long CHECK = 0x5DEECE66DL;
+
+    /*
+     * The index is a header (int INDEX_MAGIC, int VERSION, int capacity,
+     * int count, long length of the log it covers) followed by capacity
+     * slots of the key XOR the data word and the data word. A slot whose
+     * data word is MISS is empty.
+     */
+    private static final int INDEX_HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+    private static final int SLOT_BYTES = 2 * Long.BYTES;
+    private static final int COUNT_OFFSET = 3 * Integer.BYTES;
+    private static final int COVERED_OFFSET = 4 * Integer.BYTES;
+    private static final int MIN_CAPACITY = 1 << 10;
+
+    private final Path indexFile;
+    private final FileChannel log;
+
+    /**
+     * The mapped index, replaced by a larger one when it is half full.
+     */
+    private volatile MappedByteBuffer index;
+    private int capacity;
+    private int count;
+
+    /**
+     * The thread that writes results, in the order they are put.
+     */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PositionStore writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Constructor: the store whose log is file f, created empty if f does
+     * not exist.
+     * Throws an IOException if the files cannot be read or written, and an
+     * IllegalArgumentException if f is not a store log.
+     */
+    public PositionStore(Path f) throws IOException {
+        indexFile = f.resolveSibling(f.getFileName() + ".idx");
+        log = FileChannel.open(f, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (log.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+                header.putInt(LOG_MAGIC).putInt(VERSION).flip();
+                log.write(header, 0);
+            }
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            log.read(header, 0);
+            header.flip();
+            if (log.size() < LOG_HEADER_BYTES || header.getInt() != LOG_MAGIC
+                    || header.getInt() != VERSION) {
+                throw new IllegalArgumentException(f + " is not a position store");
+            }
+            open();
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Map the index, rebuilding it if it does not match the log, and bring
+     * it up to date with the log, cutting off a torn tail.
+     */
+    private void open() throws IOException {
+        long records = (log.size() - LOG_HEADER_BYTES) / RECORD_BYTES;
+        long covered = -1;
+        if (Files.exists(indexFile)) {
+            index = map(indexFile, -1);
+            if (index != null) {
+                capacity = index.getInt(2 * Integer.BYTES);
+                count = index.getInt(COUNT_OFFSET);
+                covered = index.getLong(COVERED_OFFSET);
+            }
+        }
+        long end = LOG_HEADER_BYTES + records * RECORD_BYTES;
+        if (covered < LOG_HEADER_BYTES || covered > end
+                || (covered - LOG_HEADER_BYTES) % RECORD_BYTES != 0
+                || !isValid(covered - RECORD_BYTES)) {
+            /*
+             * The index is missing, or covers records that are not in the
+             * log (it was written after a log write that was lost).
+             */
+            capacity = capacityFor(records);
+            count = 0;
+            index = map(indexFile, capacity);
+            covered = LOG_HEADER_BYTES;
+        }
+        long valid = replay(covered, end);
+        if (valid < log.size()) {
+            log.truncate(valid);
+        }
+        log.position(valid);
+        index.putLong(COVERED_OFFSET, valid);
+    }
+
+    /**
+     * Return true if the log record at offset position is whole and its
+     * check word matches. The header counts as valid.
+     */
+    private boolean isValid(long position) throws IOException {
+        if (position < LOG_HEADER_BYTES)
+            return true;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        log.read(record, position);
+        record.flip();
+        return record.remaining() == RECORD_BYTES
+                && (record.getLong() ^ record.getLong() ^ CHECK) == record.getLong();
+    }
+
+    /**
+     * Add the log records from offset start up to offset end to the index,
+     * stopping at the first that is not valid. Return the offset just past
+     * the last valid record.
+     */
+    private long replay(long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4096);
+        long position = start;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            while (buffer.hasRemaining() && log.read(buffer, position + buffer.position()) >= 0) {
+                // keep reading until the buffer is full
+            }
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_BYTES) {
+                long key = buffer.getLong();
+                long word = buffer.getLong();
+                if ((key ^ word ^ CHECK) != buffer.getLong())
+                    return position;
+                insert(key, word);
+                position += RECORD_BYTES;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Return the data word stored for the position on Board b with Player p
+     * to play, with its columns mirrored if needed so that they are columns
+     * of b, or MISS if the position is not in this store. Read its fields
+     * with OpeningBook.score, depth and columns. A store holds only
+     * positions of the standard board.
+     */
+    public long probe(Board b, Player p) {
+        if (b.getGeometry() != Geometry.STANDARD)
+            return MISS;
+        long hash = b.getHash();
+        long mirrorHash = b.getMirrorHash();
+        long word = find(index, OpeningBook.key(b, p));
+        if (word == MISS || mirrorHash >= hash)
+            return word;
+        return OpeningBook.word(OpeningBook.mirror(OpeningBook.columns(word)),
+                OpeningBook.score(word), OpeningBook.depth(word));
+    }
+
+    /**
+     * Return the data word stored with key in the index slots, or MISS if
+     * there is none.
+     */
+    private static long find(MappedByteBuffer slots, long key) {
+        int mask = (slots.capacity() - INDEX_HEADER_BYTES) / SLOT_BYTES - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            int offset = INDEX_HEADER_BYTES + i * SLOT_BYTES;
+            long word = slots.getLong(offset + Long.BYTES);
+            if (word == MISS || (slots.getLong(offset) ^ word) == key)
+                return word;
+        }
+    }
+
+    /**
+     * Store in the background that the moves in mask columns, of value s for
+     * Player p, are the best on Board b with p to play, searched to depth d.
+     * The result is kept unless the store has a deeper one. Results for
+     * boards that are not of the standard size are not stored.
+     * Precondition: 1 <= d < 256.
+     */
+    public void put(Board b, Player p, int columns, int s, int d) {
+        if (b.getGeometry() != Geometry.STANDARD)
+            return;
+        long key = OpeningBook.key(b, p);
+        if (b.getMirrorHash() < b.getHash())
+            columns = OpeningBook.mirror(columns);
+        long word = OpeningBook.word(columns, s, d);
+        writer.execute(() -> {
+            try {
+                append(key, word);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Append the result with key key and data word word to the log and add
+     * it to the index, unless the store has a deeper result for the key.
+     * The record reaches the disk before the index changes, so that the
+     * index never holds a result the log does not.
+     * Called only by the writer thread.
+     */
+    private void append(long key, long word) throws IOException {
+        long old = find(index, key);
+        if (old != MISS && OpeningBook.depth(old) > OpeningBook.depth(word))
+            return;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.putLong(key).putLong(word).putLong(key ^ word ^ CHECK).flip();
+        while (record.hasRemaining()) {
+            log.write(record);
+        }
+        log.force(false);
+        insert(key, word);
+        index.putLong(COVERED_OFFSET, log.position());
+    }
+
+    /**
+     * Add the result with key key and data word word to the index, unless it
+     * has a deeper result for the key. Return true if it was added.
+     */
+    private boolean insert(long key, long word) throws IOException {
+        int mask = capacity - 1;
+        int i = slot(key, mask);
+        for (; ; i = (i + 1) & mask) {
+            int offset = INDEX_HEADER_BYTES + i * SLOT_BYTES;
+            long old = index.getLong(offset + Long.BYTES);
+            if (old == MISS)
+                break;
+            if ((index.getLong(offset) ^ old) == key) {
+                if (OpeningBook.depth(old) > OpeningBook.depth(word))
+                    return false;
+                write(index, offset, key, word);
+                return true;
+            }
+        }
+        write(index, INDEX_HEADER_BYTES + i * SLOT_BYTES, key, word);
+        index.putInt(COUNT_OFFSET, ++count);
+        if (2 * count > capacity)
+            grow();
+        return true;
+    }
+
+    /**
+     * Replace the index by one of twice the capacity holding the same
+     * entries. The new index is built in a separate file and then moved
+     * over the old one, so a crash leaves one or the other whole.
+     */
+    private void grow() throws IOException {
+        MappedByteBuffer old = index;
+        int oldCapacity = capacity;
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        MappedByteBuffer bigger = map(tmp, 2 * oldCapacity);
+        int mask = 2 * oldCapacity - 1;
+        for (int j = 0; j < oldCapacity; j++) {
+            int from = INDEX_HEADER_BYTES + j * SLOT_BYTES;
+            long word = old.getLong(from + Long.BYTES);
+            if (word == MISS)
+                continue;
+            long key = old.getLong(from) ^ word;
+            int i = slot(key, mask);
+            while (bigger.getLong(INDEX_HEADER_BYTES + i * SLOT_BYTES + Long.BYTES) != MISS) {
+                i = (i + 1) & mask;
+            }
+            write(bigger, INDEX_HEADER_BYTES + i * SLOT_BYTES, key, word);
+        }
+        bigger.putInt(COUNT_OFFSET, count);
+        bigger.putLong(COVERED_OFFSET, old.getLong(COVERED_OFFSET));
+        bigger.force();
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        capacity = 2 * oldCapacity;
+        index = bigger;
+    }
+
+    /**
+     * Return the number of positions in this store. Results put but not yet
+     * written are not counted.
+     */
+    public int size() {
+        return index.getInt(COUNT_OFFSET);
+    }
+
+    /**
+     * Wait until every result put so far has been written, and write the
+     * log and index through to the disk.
+     */
+    public void flush() throws IOException {
+        try {
+            writer.submit(() -> null).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException(e);
+        }
+        log.force(false);
+        index.force();
+    }
+
+    /**
+     * Write every result put so far and close the store.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        log.force(false);
+        index.force();
+        log.close();
+    }
+
+    /**
+     * Return the index file f mapped. If capacity is -1 the existing file is
+     * mapped, or null returned if it is not a valid index; otherwise a new
+     * empty index of capacity slots replaces it.
+     */
+    private static MappedByteBuffer map(Path f, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(f, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (capacity == -1) {
+                if (channel.size() < INDEX_HEADER_BYTES)
+                    return null;
+                MappedByteBuffer m = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                int c = m.getInt(2 * Integer.BYTES);
+                if (m.getInt(0) != INDEX_MAGIC || m.getInt(Integer.BYTES) != VERSION
+                        || c < MIN_CAPACITY || Integer.bitCount(c) != 1
+                        || channel.size() != INDEX_HEADER_BYTES + (long) c * SLOT_BYTES)
+                    return null;
+                return m;
+            }
+            channel.truncate(0);
+            MappedByteBuffer m = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    INDEX_HEADER_BYTES + (long) capacity * SLOT_BYTES);
+            m.putInt(0, INDEX_MAGIC);
+            m.putInt(Integer.BYTES, VERSION);
+            m.putInt(2 * Integer.BYTES, capacity);
+            return m;
+        }
+    }
+
+    /**
+     * Return the smallest capacity that keeps an index of records entries
+     * at most half full.
+     */
+    private static int capacityFor(long records) {
+        long c = MIN_CAPACITY;
+        while (c < 2 * records + 2) {
+            c *= 2;
+        }
+        return (int) c;
+    }
+
+    /**
+     * Return the first slot to try for key in an index with slot mask mask.
+     */
+    private static int slot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    /**
+     * Set the slot at offset offset of index m to hold data word word for
+     * key. The data word goes first, so a reader that sees the new data word
+     * with the old key check fails the check rather than reading the wrong
+     * position's data.
+     */
+    private static void write(MappedByteBuffer m, int offset, long key, long word) {
+        m.putLong(offset + Long.BYTES, word);
+        m.putLong(offset, key ^ word);
+    }
+}
@@ -0,0 +1,434 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An instance runs the alpha-beta (negamax) search of an AI on one Board,
+ * playing and taking back moves on that Board. Values are seen from the
+ * side of the player to play, using AI.evaluate at the leaves.
+ * <p/>
+ * A Search belongs to one thread. If it is given a ForkJoinPool it searches
+ * in parallel Young Brothers Wait style: at the root and at nodes near it,
+ * the first (eldest) move is searched alone, and once its value has
+ * narrowed the window the other moves are searched as parallel tasks, each
+ * by a helper Search with its own copy of the Board. The helpers share the
+ * best value found so far, so each starts with the tightest window known.
+ * The values found are the same as those of the sequential search.
+ */
+class Search {
+
+    /**
+     * A bound beyond any value AI.evaluate can return. It is not
+     * Integer.MIN_VALUE so that it can be negated safely.
+     */
+    static final int INFINITY = Integer.MAX_VALUE;
+
+    /**
+     * XORed into the hash of a board when Player.YELLOW is to play, so that
+     * the same discs with a different player to play are cached separately.
+     */
+    static final long YELLOW_TO_PLAY = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The number of positions searched between checks of the clock.
+     */
+    private static final int NODES_PER_CLOCK_CHECK = 1 << 12;
+
+    /**
+     * Nodes are split between threads only if they are this many moves from
+     * the leaves or more, so that each task is worth its overhead, and only
+     * if they are at most this many moves from the root.
+     */
+    private static final int MIN_SPLIT_DEPTH = 6;
+    private static final int MAX_SPLIT_PLY = 2;
+
+    private final Board board;
+    private final Geometry geometry;
+    private final TranspositionTable table;
+    private final MoveOrdering ordering;
+
+    /**
+     * The pool that runs parallel tasks, or null to search sequentially.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The System.nanoTime at which the search must stop, whether another
+     * thread has asked it to stop (shared with its helpers), and whether it
+     * has stopped for either reason. Both are only checked every
+     * NODES_PER_CLOCK_CHECK nodes, so the search needs no synchronization
+     * at each node.
+     */
+    private long deadline = Long.MAX_VALUE;
+    private final AtomicBoolean stopRequested;
+    private boolean stopped;
+
+    /**
+     * The number of positions visited by this search and its helpers.
+     */
+    private long nodes;
+
+    /**
+     * The value of the best moves found by the last call to searchRoot.
+     */
+    private int rootValue;
+
+    /**
+     * Constructor: a search of Board b (which it plays moves on) that caches
+     * positions in table t, orders moves with ordering o and runs parallel
+     * tasks in pool (null to search sequentially).
+     */
+    Search(Board b, TranspositionTable t, MoveOrdering o, ForkJoinPool pool) {
+        this(b, t, o, pool, new AtomicBoolean());
+    }
+
+    /**
+     * Constructor: as above, but stopping when stop is set.
+     */
+    Search(Board b, TranspositionTable t, MoveOrdering o, ForkJoinPool pool,
+            AtomicBoolean stop) {
+        board = b;
+        geometry = b.getGeometry();
+        table = t;
+        ordering = o;
+        this.pool = pool;
+        stopRequested = stop;
+    }
+
+    /**
+     * Constructor: a helper of search s, for another thread. It shares s's
+     * table, pool, deadline and stop requests, but has its own copy of s's
+     * Board and its own move ordering.
+     */
+    private Search(Search s) {
+        this(new Board(s.board), s.table, new MoveOrdering(), s.pool, s.stopRequested);
+        deadline = s.deadline;
+    }
+
+    /**
+     * Set the System.nanoTime at which the search must stop to t, and clear
+     * isStopped.
+     */
+    void setDeadline(long t) {
+        deadline = t;
+        stopped = false;
+    }
+
+    /**
+     * Ask the search, which may be running in another thread, to stop soon.
+     */
+    void stop() {
+        stopRequested.set(true);
+    }
+
+    /**
+     * Return true if the search stopped because it reached its deadline or
+     * was asked to stop. The values it returned since the deadline was set
+     * are then meaningless.
+     */
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Return the number of positions visited by this search and its helpers.
+     */
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Return the value, for the player to play, of the best moves returned
+     * by the last call to searchRoot that was not stopped.
+     */
+    int getRootValue() {
+        return rootValue;
+    }
+
+    /**
+     * Search the board, on which Player p is to play, to depth d and return
+     * the columns of the moves with the best value as a bit mask. columns
+     * is the mask of possible moves, and the moves in mask first are
+     * searched before the others, each group from the center out.
+     * <p/>
+     * Each move is searched with a window that starts just below the best
+     * value so far, so a move that ties the best gets its exact value while
+     * worse moves can be cut off early. If the board is its own mirror
+     * image, only the moves up to the center column are searched and each
+     * other move takes the value of its mirror image.
+     */
+    int searchRoot(Player p, int d, int columns, int first) {
+        nodes++;
+        boolean symmetric = board.isSymmetric();
+        int searched = symmetric ? columns & geometry.leftHalf : columns;
+        int[] moves = new int[geometry.cols];
+        int n = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int c : geometry.centerOrder) {
+                if ((searched & (1 << c)) != 0 && ((first & (1 << c)) != 0) == (pass == 0))
+                    moves[n++] = c;
+            }
+        }
+        int[] values = new int[geometry.cols];
+        AtomicInteger best = new AtomicInteger(-INFINITY);
+        values[moves[0]] = searchRootMove(p, moves[0], d, best);
+        if (pool == null) {
+            for (int i = 1; i < n && !stopped; i++) {
+                values[moves[i]] = searchRootMove(p, moves[i], d, best);
+            }
+        } else {
+            List<MoveTask> tasks = new ArrayList<>();
+            for (int i = 1; i < n; i++) {
+                tasks.add(new MoveTask(this, p, moves[i], i, d, 0, best, INFINITY));
+            }
+            runAll(tasks);
+            for (MoveTask task : tasks) {
+                values[task.column] = task.value;
+            }
+        }
+        if (stopped)
+            return 0;
+        rootValue = best.get();
+        int bestColumns = 0;
+        for (int i = 0; i < n; i++) {
+            if (values[moves[i]] == best.get())
+                bestColumns |= 1 << moves[i];
+        }
+        if (symmetric) {
+            for (int c = 0; c < geometry.cols; c++) {
+                if ((bestColumns & (1 << c)) != 0)
+                    bestColumns |= 1 << geometry.mirror(c);
+            }
+        }
+        return bestColumns;
+    }
+
+    /**
+     * Return the value for Player p of playing in column c at the root,
+     * searched to depth d, where best holds the best value of the moves
+     * searched so far. The value is exact if it is at least best, and best
+     * is raised to it if it is higher.
+     */
+    private int searchRootMove(Player p, int c, int d, AtomicInteger best) {
+        int b = best.get();
+        int alpha = b == -INFINITY ? -INFINITY : b - 1;
+        board.makeMove(p, c);
+        int value = -negamax(p.opponent(), d - 1, 1, -INFINITY, -alpha);
+        board.undoMove(c);
+        best.accumulateAndGet(value, Math::max);
+        return value;
+    }
+
+    /**
+     * Return the value of the board for Player p, who is to play at ply ply
+     * from the root, searching d moves ahead with alpha-beta pruning.
+     * <p/>
+     * The result is exact if it lies strictly between alpha and beta. If it
+     * is at most alpha, the true value is at most the result; if it is at
+     * least beta, the true value is at least the result. The board is
+     * unchanged when this returns.
+     */
+    int negamax(Player p, int d, int ply, int alpha, int beta) {
+        if (++nodes % NODES_PER_CLOCK_CHECK == 0
+                && (System.nanoTime() > deadline || stopRequested.get()))
+            stopped = true;
+        if (stopped)
+            return 0;
+        /*
+         * At maximum depth, or if the game is over, we are at a leaf and
+         * evaluate the board.
+         */
+        int columns = d > 0 ? board.getPossibleColumns() : 0;
+        if (columns == 0)
+            return AI.evaluate(board, p);
+        /*
+         * If this board has been searched to the same depth before, its value
+         * may already be known well enough. Only the same depth is used: a
+         * deeper result could differ from the value searching to depth d
+         * gives, and AI promises the Minimax values for its depth.
+         *
+         * A board and its mirror image have the same value, so both are
+         * cached under the smaller of their hashes, and the best column is
+         * stored as seen on the board with that hash.
+         */
+        long hash = board.getHash();
+        long mirrorHash = board.getMirrorHash();
+        boolean mirrored = mirrorHash < hash;
+        long key = (mirrored ? mirrorHash : hash) ^ (p == Player.YELLOW ? YELLOW_TO_PLAY : 0);
+        long entry = table.probe(key);
+        int bestColumn = TranspositionTable.NO_COLUMN;
+        if (entry != TranspositionTable.MISS) {
+            bestColumn = mirror(TranspositionTable.column(entry), mirrored);
+            if (TranspositionTable.depth(entry) == d) {
+                int score = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || bound == TranspositionTable.LOWER && score >= beta
+                        || bound == TranspositionTable.UPPER && score <= alpha)
+                    return score;
+            }
+        }
+        /*
+         * Otherwise take the best of the children's values, stopping as soon
+         * as one is so good that the opponent would avoid this board. Moves
+         * are tried in the order most likely to cause that cut off early.
+         * On a board that is its own mirror image, moves right of center
+         * are worth the same as their mirror images, so they are skipped.
+         */
+        if (hash == mirrorHash && board.isSymmetric())
+            columns &= geometry.leftHalf;
+        int originalAlpha = alpha;
+        int value = -INFINITY;
+        int n = ordering.order(ply, columns, bestColumn, p, geometry);
+        int[] moves = ordering.moves(ply);
+        for (int i = 0; i < n; i++) {
+            int c = moves[i];
+            /*
+             * Once the eldest move has been searched without a cut off, the
+             * rest can be searched in parallel.
+             */
+            if (i == 1 && pool != null && d >= MIN_SPLIT_DEPTH && ply <= MAX_SPLIT_PLY) {
+                AtomicInteger shared = new AtomicInteger(alpha);
+                List<MoveTask> tasks = new ArrayList<>();
+                for (int j = 1; j < n; j++) {
+                    tasks.add(new MoveTask(this, p, moves[j], j, d, ply, shared, beta));
+                }
+                runAll(tasks);
+                if (stopped)
+                    return 0;
+                int bestIndex = 0;
+                for (MoveTask task : tasks) {
+                    if (task.searched && task.value > value) {
+                        value = task.value;
+                        bestColumn = task.column;
+                        bestIndex = task.index;
+                    }
+                }
+                if (value >= beta)
+                    ordering.cutoff(ply, bestColumn, d, p, bestIndex);
+                break;
+            }
+            board.makeMove(p, c);
+            int childValue = -negamax(p.opponent(), d - 1, ply + 1, -beta, -alpha);
+            board.undoMove(c);
+            if (stopped)
+                return 0;
+            if (childValue > value) {
+                value = childValue;
+                bestColumn = c;
+                if (value > alpha) {
+                    alpha = value;
+                    if (alpha >= beta) {
+                        ordering.cutoff(ply, c, d, p, i);
+                        break;
+                    }
+                }
+            }
+        }
+        int bound = value <= originalAlpha ? TranspositionTable.UPPER
+                : value >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(key, d, bound, value, mirror(bestColumn, mirrored));
+        return value;
+    }
+
+    /**
+     * Return the column that mirrors column c across the center if mirrored
+     * is true, and c otherwise. TranspositionTable.NO_COLUMN is unchanged.
+     */
+    private int mirror(int c, boolean mirrored) {
+        return mirrored && c != TranspositionTable.NO_COLUMN ? geometry.mirror(c) : c;
+    }
+
+    /**
+     * Run tasks in the pool and wait for them all, then add their helpers'
+     * work to this search's.
+     */
+    private void runAll(List<MoveTask> tasks) {
+        if (ForkJoinTask.getPool() == pool) {
+            RecursiveAction.invokeAll(tasks);
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        for (MoveTask task : tasks) {
+            nodes += task.helper.nodes;
+            stopped |= task.helper.stopped;
+            ordering.addStatistics(task.helper.ordering);
+        }
+    }
+
+    /**
+     * An instance searches one move of a node, in a helper Search, as a task
+     * that can run in parallel with the other moves of the node.
+     */
+    private static class MoveTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Search helper;
+        private final Player player;  // the player making the move
+        private final int column;     // the column of the move
+        private final int index;      // the place of the move in the node's order
+        private final int depth;      // moves left to search at the node
+        private final int ply;        // ply of the node
+
+        /**
+         * The best value of the node's moves searched so far (for the
+         * root) or the node's alpha (otherwise), shared by its tasks.
+         */
+        private final AtomicInteger shared;
+        private final int beta;
+
+        private boolean searched;  // false if a cut off made the move pointless
+        private int value;         // the move's value, if searched
+
+        /**
+         * Constructor: a task that searches player p's move in column c, the
+         * i-th move in the node's order, at a node at ply ply of search s,
+         * with d moves left to search. At the root (ply 0) shared is the
+         * best value found so far; elsewhere it is the node's alpha, which is
+         * beaten by beta.
+         */
+        MoveTask(Search s, Player p, int c, int i, int d, int ply, AtomicInteger shared, int beta) {
+            helper = new Search(s);
+            player = p;
+            column = c;
+            index = i;
+            depth = d;
+            this.ply = ply;
+            this.shared = shared;
+            this.beta = beta;
+        }
+
+        @Override
+        protected void compute() {
+            if (ply == 0) {
+                value = helper.searchRootMove(player, column, depth, shared);
+                searched = true;
+                return;
+            }
+            int alpha = shared.get();
+            if (alpha >= beta)
+                return;
+            helper.board.makeMove(player, column);
+            value = -helper.negamax(player.opponent(), depth - 1, ply + 1, -beta, -alpha);
+            helper.board.undoMove(column);
+            searched = true;
+            /*
+             * A value above alpha is exact (or at least beta), so the other
+             * moves can use it to narrow their window.
+             */
+            if (value > alpha)
+                shared.accumulateAndGet(value, Math::max);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Measures how much faster AI.getMoves runs with more threads. For 1 up to
+ * the given number of threads it times a fresh AI on a fixed set of
+ * positions, and checks that every thread count chooses the same moves as
+ * the sequential search.
+ * <p/>
+ * Usage: java game.SearchBenchmark [depth [maxThreads [SPLIT|LAZY_SMP]]]
+ */
+public class SearchBenchmark {
+
+    /**
+     * The openings timed: each string lists the columns played in turn,
+     * starting with RED.
+     */
+    private static final String[] OPENINGS = {"", "3", "33", "323", "3324", "32415", "332244"};
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        AI.Parallelism mode = args.length > 2 ? AI.Parallelism.valueOf(args[2])
+                : AI.Parallelism.SPLIT;
+
+        // one untimed round so the first timing does not include JIT compilation
+        run(depth, 1, mode, new long[1]);
+        System.out.println(mode + ", depth " + depth + ", " + OPENINGS.length + " positions, "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+        long sequentialTime = 0;
+        int[][] sequentialMoves = null;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            long start = System.nanoTime();
+            long[] nodes = new long[1];
+            int[][] moves = run(depth, threads, mode, nodes);
+            long time = System.nanoTime() - start;
+            if (threads == 1) {
+                sequentialTime = time;
+                sequentialMoves = moves;
+            }
+            System.out.printf("%2d threads: %8.0f ms  %,12d nodes  speedup %.2f  %s%n",
+                    threads, time / 1e6, nodes[0], (double) sequentialTime / time,
+                    Arrays.deepEquals(moves, sequentialMoves) ? "same moves" : "DIFFERENT MOVES");
+        }
+    }
+
+    /**
+     * Return the moves chosen, as columns, for each of the openings by a new AI
+     * with n threads in mode mode searching to depth d, adding the nodes
+     * searched to nodes[0].
+     */
+    private static int[][] run(int d, int n, AI.Parallelism mode, long[] nodes) {
+        int[][] moves = new int[OPENINGS.length][];
+        for (int i = 0; i < OPENINGS.length; i++) {
+            Board board = new Board();
+            Player player = Player.RED;
+            for (char column : OPENINGS[i].toCharArray()) {
+                board.makeMove(player, column - '0');
+                player = player.opponent();
+            }
+            AI ai = new AI(player, d);
+            ai.setParallelism(n, mode);
+            moves[i] = columns(ai.getMoves(board));
+            ai.setParallelism(1);
+            nodes[0] += ai.getNodesSearched();
+        }
+        return moves;
+    }
+
+    /**
+     * Return the columns of moves.
+     */
+    private static int[] columns(Move[] moves) {
+        int[] columns = new int[moves.length];
+        for (int i = 0; i < moves.length; i++) {
+            columns[i] = moves[i].getColumn();
+        }
+        return columns;
+    }
+}
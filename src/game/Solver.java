@@ -1,5 +1,8 @@
 package game;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
  * An instance is an entity that can supply moves for a Connect Four game.
  */
@@ -13,4 +16,27 @@ public interface Solver {
      * Precondition: b is not null.
      */
     public Move[] getMoves(Board b);
-}
\ No newline at end of file
+
+    /**
+     * Return a future of the Moves getMoves(b) would return, so that the
+     * caller need not wait for them. Cancelling the future tells this Solver
+     * that the moves are no longer wanted. b must not change until the
+     * future is complete.
+     * By default getMoves runs in the common ForkJoinPool.
+     * Precondition: b is not null.
+     */
+    public default CompletableFuture<Move[]> getMovesAsync(Board b) {
+        return CompletableFuture.supplyAsync(() -> getMoves(b));
+    }
+
+    /**
+     * As getMovesAsync(b), but the Moves are wanted within timeout. A Solver
+     * that can choose in less time completes the future with the best Moves
+     * it has found by then; otherwise (the default) the future completes
+     * with a TimeoutException.
+     * Precondition: b is not null.
+     */
+    public default CompletableFuture<Move[]> getMovesAsync(Board b, long timeout, TimeUnit unit) {
+        return Delays.within(getMovesAsync(b), timeout, unit);
+    }
+}
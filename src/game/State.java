@@ -1,10 +1,14 @@
 package game;
 
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * An instance represents the state of a game of Connect Four.
@@ -15,6 +19,19 @@ public class State implements Comparable<Object> {
      */
     public final static State[] length0 = {};
 
+    /**
+     * The columns from left to right, the order of the children made by
+     * initializeChildren. Those past the edge of a board are skipped, as
+     * full columns are.
+     */
+    private static final int[] LEFT_TO_RIGHT = new int[Geometry.MAX_COLS];
+
+    static {
+        for (int c = 0; c < Geometry.MAX_COLS; c++) {
+            LEFT_TO_RIGHT[c] = c;
+        }
+    }
+
     /**
      * It is player's turn to play.
      */
@@ -114,70 +131,118 @@ public class State implements Comparable<Object> {
      */
     public void initializeChildren() {
         /*
-         * Get the possible moves on this state's board.
-         */
-        Move[] possibleMoves = board.getPossibleMoves(player);
-        /*
-         * For each of the possible moves create a new state object child by 
-         *  - creating a new board based on the current one
-         *  - applying the new possible move
-         *  - marking the new state's player as the current player's opponent.
-         *  All of the above can be achieved with the correct State constructor.
+         * Make a child for each column that can be played on this state's
+         * board, from left to right (see childIterator), and set this state's
+         * children to the array of them.
          */
-        List<State> children = new ArrayList<>();
-        for (Move move : possibleMoves) {
-            Board possibleBoard = new Board(board, move);
-            children.add(new State(player.opponent(), possibleBoard, move));
+        State[] children = new State[Integer.bitCount(board.getPossibleColumns())];
+        Iterator<State> it = childIterator();
+        for (int i = 0; it.hasNext(); i++) {
+            children[i] = it.next();
         }
-        /*
-         * Set this state's children to the array of possible next states.
+        setChildren(children);
+    }
+
+    /**
+     * Return an iterator over the States that can result from the next
+     * move, from the leftmost column to the rightmost. Each child is made
+     * only when next returns it, and is not kept by this State, so a caller
+     * that needs only some of the children does not pay for the others.
+     * Use initializeChildren to make and keep them all.
+     */
+    public Iterator<State> childIterator() {
+        return new ChildIterator(LEFT_TO_RIGHT);
+    }
+
+    /**
+     * Return an iterator over the States that can result from the next
+     * move, as childIterator() does, but taking the columns in the order
+     * order lists them. Columns that are full, or not in order, are skipped,
+     * and a column listed twice gives one child.
+     * Precondition: each column in order is in 0..getBoard().getNumCols()-1.
+     */
+    public Iterator<State> childIterator(int[] order) {
+        for (int c : order) {
+            if (c < 0 || c >= board.getNumCols()) {
+                throw new IllegalArgumentException("No column " + c + " on the board");
+            }
+        }
+        return new ChildIterator(order.clone());
+    }
+
+    /**
+     * An iterator over the children of this State in a given column order,
+     * which makes each child when it is returned.
+     */
+    private class ChildIterator implements Iterator<State> {
+        private final int[] order;  // the columns in the order to take them
+        private int next;           // the index in order of the next column to try
+        private int columns = board.getPossibleColumns();  // the columns not taken yet
+
+        private ChildIterator(int[] order) {
+            this.order = order;
+            skipUnplayable();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < order.length;
+        }
+
+        @Override
+        public State next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int c = order[next++];
+            columns &= ~(1 << c);
+            skipUnplayable();
+            Move move = Move.of(player, c);
+            return new State(player.opponent(), new Board(board, move), move);
+        }
+
+        /**
+         * Advance next past the columns of order that give no child.
          */
-       setChildren(children.toArray(new State[]{})); 
+        private void skipUnplayable() {
+            while (next < order.length && (columns & (1 << order[next])) == 0) {
+                next++;
+            }
+        }
     }
 
     /**
      * Write this State to a file called "output.txt", including its
      * children, their children, etc.. This method allows the State to
      * be viewed in a file even when it is too large to print to console.
-     * Beep when printing is done.
+     * The tree is streamed to the file (see TreeWriter), so it can be of
+     * any size. Beep when printing is done.
      */
     public void writeToFile() {
-        try (PrintWriter writer = new PrintWriter("output.txt", "UTF-8")) {
-            writer.println(this);
+        try (FileChannel channel = FileChannel.open(Paths.get("output.txt"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            new TreeWriter().write(this, channel);
             java.awt.Toolkit.getDefaultToolkit().beep();
-        } catch (FileNotFoundException | UnsupportedEncodingException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Return a representation of this State.
+     * Return a representation of this State: its player to play, value and
+     * board, followed by a similar representation of all its children,
+     * indented, and so on down the tree.
      */
     @Override
     public String toString() {
-        System.out.println("State.toString printing");
-        return toStringHelper(0, "");
-    }
-
-    /**
-     * Return a string that contains a representation of this board indented
-     * with string ind (expected to be a string of blank characters) followed
-     * by a similar representation of all its children,
-     * indented an additional ind characters. d is the depth of this state.
-     */
-    private String toStringHelper(int d, String ind) {
-        String str = ind + player + " to play\n";
-        str = str + ind + "Value: " + value + "\n";
-        str = str + board.toString(ind) + "\n";
-        if (children != null && children.length > 0) {
-            str = str + ind + "Children at depth " + (d + 1) + ":\n" +
-                    ind + "----------------\n";
-
-            for (State s : children) {
-                str = str + s.toStringHelper(d + 1, ind + "   ");
-            }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            new TreeWriter().write(this, Channels.newChannel(bytes));
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        return str;
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
     }
 
     /**
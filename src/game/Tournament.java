@@ -0,0 +1,574 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * An instance plays many games between two kinds of Solver, the first and
+ * the second, and reports how the first did against the second. Unlike
+ * Game it has no GUI, prints nothing and never waits between moves, and it
+ * plays games on all processors at once.
+ * <p/>
+ * Each game starts from an opening: a few moves played before the solvers
+ * take over, either drawn at random or taken from a given list. Each
+ * opening is played twice, the solvers swapping colours, so that neither
+ * gains from a lucky opening. New Solvers are made for each game, so that
+ * games can run in parallel and none depends on the games before it.
+ * <p/>
+ * A solver that returns no move, or a move into a full column, or that
+ * throws an exception, loses the game (a forfeit).
+ * <p/>
+ * Usage: java game.Tournament [games [depth1 [depth2 [threads]]]]
+ * plays an AI searching to depth1 against one searching to depth2.
+ */
+public class Tournament {
+
+    /**
+     * The outcomes of a sequential probability ratio test.
+     */
+    public enum Decision {
+        /** The Elo difference is elo0 or less. */
+        H0,
+        /** The Elo difference is elo1 or more. */
+        H1,
+        /** More games are needed to tell. */
+        CONTINUE
+    }
+
+    private final Function<Player, Solver> first;
+    private final Function<Player, Solver> second;
+
+    private int games = 1000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Geometry geometry = Geometry.STANDARD;
+    private int openingPlies = 4;
+    private String[] openingList;
+    private int[][] openings;
+    private long seed;
+
+    /**
+     * The Elo differences, and the error rates, of the SPRT that stops the
+     * tournament early (null if none does).
+     */
+    private double[] sprt;
+
+    /**
+     * Constructor: a tournament between the solvers that first and second
+     * make for a player.
+     */
+    public Tournament(Function<Player, Solver> first, Function<Player, Solver> second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * Play n games (1000 by default).
+     * Precondition: n >= 1.
+     */
+    public void setGames(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("A tournament needs at least one game");
+        }
+        games = n;
+    }
+
+    /**
+     * Play n games at a time (by default, one per processor).
+     * Precondition: n >= 1.
+     */
+    public void setThreads(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("A tournament needs at least one thread");
+        }
+        threads = n;
+    }
+
+    /**
+     * Play on boards of shape g (the standard board by default).
+     * Throw an IllegalArgumentException if the random openings are too long
+     * for g (see setRandomOpenings), or if a given opening is not a game in
+     * progress on g (see setOpenings).
+     */
+    public void setGeometry(Geometry g) {
+        if (openings == null) {
+            checkOpeningPlies(openingPlies, g);
+        } else {
+            openings = columns(openingList, g);
+        }
+        geometry = g;
+    }
+
+    /**
+     * Start games with n moves drawn at random with seed (4 moves and seed
+     * 0 by default). Random openings never end the game.
+     * Precondition: 0 <= n <= half the tiles of the board, so that random
+     * moves often leave the game in progress.
+     */
+    public void setRandomOpenings(int n, long seed) {
+        checkOpeningPlies(n, geometry);
+        openingPlies = n;
+        this.seed = seed;
+        openingList = null;
+        openings = null;
+    }
+
+    /**
+     * Throw an IllegalArgumentException if random openings of n moves are
+     * not allowed on boards of shape g: if n is negative, or more than half
+     * the tiles, past which drawing moves until they do not end the game
+     * could take forever.
+     */
+    private static void checkOpeningPlies(int n, Geometry g) {
+        if (n < 0) {
+            throw new IllegalArgumentException("An opening cannot have a negative number of moves");
+        }
+        if (n > g.tiles / 2) {
+            throw new IllegalArgumentException("A random opening of " + n + " moves on a " + g
+                    + " board would often end the game");
+        }
+    }
+
+    /**
+     * Start games with the given openings, in turn. Each opening lists the
+     * columns played, starting with RED, e.g. "3324".
+     * Throw an IllegalArgumentException if an opening is not a game in
+     * progress on the board.
+     */
+    public void setOpenings(String... list) {
+        openings = columns(list, geometry);
+        openingList = list.clone();
+    }
+
+    /**
+     * Return the columns of each opening in list on boards of shape g.
+     * Throw an IllegalArgumentException if an opening is not a game in
+     * progress on g.
+     */
+    private static int[][] columns(String[] list, Geometry g) {
+        int[][] columns = new int[list.length][];
+        for (int i = 0; i < list.length; i++) {
+            columns[i] = new int[list[i].length()];
+            Board b = new Board(g);
+            Player p = Player.RED;
+            for (int j = 0; j < columns[i].length; j++) {
+                int c = Character.digit(list[i].charAt(j), Character.MAX_RADIX);
+                if (c < 0 || c >= g.cols || b.isColumnFull(c) || b.hasConnectFour() != null)
+                    throw new IllegalArgumentException("Opening " + list[i] + " cannot be played");
+                b.makeMove(p, c);
+                p = p.opponent();
+                columns[i][j] = c;
+            }
+            if (b.hasConnectFour() != null || b.isFull())
+                throw new IllegalArgumentException("Opening " + list[i] + " ends the game");
+        }
+        return columns;
+    }
+
+    /**
+     * Stop as soon as a sequential probability ratio test, with error rates
+     * alpha (of accepting H1 wrongly) and beta (of accepting H0 wrongly),
+     * decides whether the first solver is elo0 or elo1 Elo stronger than
+     * the second.
+     * Precondition: elo0 < elo1 and alpha and beta are in (0, 1).
+     */
+    public void setSprt(double elo0, double elo1, double alpha, double beta) {
+        if (!(elo0 < elo1) || !(0 < alpha && alpha < 1) || !(0 < beta && beta < 1)) {
+            throw new IllegalArgumentException("An SPRT needs elo0 < elo1 and error rates in (0, 1)");
+        }
+        sprt = new double[] {elo0, elo1, alpha, beta};
+    }
+
+    /**
+     * Play the tournament and return its result. Games stopped by an SPRT
+     * are not played. An exception thrown other than by a solver choosing a
+     * move, as by making one, is thrown from here once the games already
+     * started are over.
+     */
+    public Result run() {
+        Result result = new Result();
+        AtomicBoolean decided = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int i = 0; i < games; i++) {
+                int game = i;
+                done.add(pool.submit(() -> {
+                    if (decided.get())
+                        return;
+                    playGame(game, result);
+                    if (sprt != null && result.sprt(sprt[0], sprt[1], sprt[2], sprt[3]) != Decision.CONTINUE)
+                        decided.set(true);
+                }));
+            }
+            RuntimeException failure = null;
+            for (Future<?> f : done) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    decided.set(true);
+                    if (failure == null)
+                        failure = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    decided.set(true);
+                    if (failure == null)
+                        failure = new RuntimeException(e);
+                }
+            }
+            if (failure != null)
+                throw failure;
+        } finally {
+            pool.shutdown();
+        }
+        result.finish();
+        return result;
+    }
+
+    /**
+     * Play game number i and add it to result. In even games the first
+     * solver plays RED, in odd games YELLOW; games 2k and 2k + 1 start from
+     * the same opening.
+     */
+    private void playGame(int i, Result result) {
+        Board board = new Board(geometry);
+        Player p = Player.RED;
+        for (int c : opening(i / 2)) {
+            board.makeMove(p, c);
+            p = p.opponent();
+        }
+        Player firstColour = i % 2 == 0 ? Player.RED : Player.YELLOW;
+        Solver[] solvers = new Solver[Player.values().length];
+        solvers[firstColour.ordinal()] = first.apply(firstColour);
+        solvers[firstColour.opponent().ordinal()] = second.apply(firstColour.opponent());
+        long[][] latencies = {new long[board.getEmptyCount()], new long[board.getEmptyCount()]};
+        int[] moves = new int[2];
+        Player winner = null;
+        boolean forfeit = false;
+        boolean error = false;
+        while (board.getPossibleColumns() != 0) {
+            int side = p == firstColour ? 0 : 1;
+            long start = System.nanoTime();
+            Move[] best;
+            try {
+                best = solvers[p.ordinal()].getMoves(board);
+            } catch (RuntimeException e) {
+                best = null;
+                error = true;
+            }
+            latencies[side][moves[side]++] = System.nanoTime() - start;
+            if (error || best.length == 0 || (board.getPossibleColumns() & (1 << best[0].getColumn())) == 0) {
+                winner = p.opponent();
+                forfeit = true;
+                break;
+            }
+            board.makeMove(p, best[0].getColumn());
+            p = p.opponent();
+        }
+        if (!forfeit) {
+            winner = board.hasConnectFour();
+        }
+        int outcome = winner == null ? 0 : winner == firstColour ? 1 : -1;
+        result.add(outcome, forfeit, error, Arrays.copyOf(latencies[0], moves[0]),
+                Arrays.copyOf(latencies[1], moves[1]));
+    }
+
+    /**
+     * Return the columns of opening number k.
+     */
+    private int[] opening(int k) {
+        if (openings != null)
+            return openings[k % openings.length];
+        /*
+         * Draw random moves, starting again whenever they end the game.
+         */
+        Random random = new Random(seed + k);
+        int[] columns = new int[openingPlies];
+        Board b = new Board(geometry);
+        Player p = Player.RED;
+        for (int j = 0; j < columns.length; j++) {
+            int possible = b.getPossibleColumns();
+            int n = random.nextInt(Integer.bitCount(possible));
+            int c = Integer.numberOfTrailingZeros(possible);
+            for (; n > 0; n--) {
+                possible &= possible - 1;
+                c = Integer.numberOfTrailingZeros(possible);
+            }
+            b.makeMove(p, c);
+            p = p.opponent();
+            columns[j] = c;
+            if (b.getPossibleColumns() == 0) {
+                b = new Board(geometry);
+                p = Player.RED;
+                j = -1;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * An instance holds the results of a tournament, seen from the side of
+     * the first solver: its wins, draws and losses, and how long each
+     * solver took to choose its moves. Its statistics treat the games as
+     * independent draws from the same distribution of outcomes.
+     */
+    public static class Result {
+
+        /**
+         * The z-score of a 95% confidence interval.
+         */
+        private static final double Z_95 = 1.96;
+
+        private int wins;
+        private int draws;
+        private int losses;
+        private int forfeits;
+        private int errors;
+
+        /**
+         * The time, in nanoseconds, each solver took for each of its moves
+         * (index 0 for the first solver), and the number of moves in each.
+         */
+        private long[][] latencies = {new long[64], new long[64]};
+        private final int[] moves = new int[2];
+
+        /**
+         * Add a game with outcome 1 (the first solver won), 0 (a draw) or
+         * -1 (the second won), decided by a forfeit if forfeit is true, for
+         * an exception if error is also true, in which the first and second
+         * solvers took first and second nanoseconds for their moves.
+         */
+        private synchronized void add(int outcome, boolean forfeit, boolean error, long[] first,
+                long[] second) {
+            if (outcome > 0) {
+                wins++;
+            } else if (outcome < 0) {
+                losses++;
+            } else {
+                draws++;
+            }
+            if (forfeit)
+                forfeits++;
+            if (error)
+                errors++;
+            long[][] times = {first, second};
+            for (int side = 0; side < 2; side++) {
+                if (moves[side] + times[side].length > latencies[side].length) {
+                    latencies[side] = Arrays.copyOf(latencies[side],
+                            2 * (moves[side] + times[side].length));
+                }
+                System.arraycopy(times[side], 0, latencies[side], moves[side], times[side].length);
+                moves[side] += times[side].length;
+            }
+        }
+
+        /**
+         * Sort the latencies, once all games have been added.
+         */
+        private void finish() {
+            for (int side = 0; side < 2; side++) {
+                latencies[side] = Arrays.copyOf(latencies[side], moves[side]);
+                Arrays.sort(latencies[side]);
+            }
+        }
+
+        /**
+         * Return the number of games played.
+         */
+        public synchronized int getGames() {
+            return wins + draws + losses;
+        }
+
+        /**
+         * Return the number of games the first solver won.
+         */
+        public synchronized int getWins() {
+            return wins;
+        }
+
+        /**
+         * Return the number of games drawn.
+         */
+        public synchronized int getDraws() {
+            return draws;
+        }
+
+        /**
+         * Return the number of games the first solver lost.
+         */
+        public synchronized int getLosses() {
+            return losses;
+        }
+
+        /**
+         * Return the number of games, won or lost, that ended by a forfeit.
+         */
+        public synchronized int getForfeits() {
+            return forfeits;
+        }
+
+        /**
+         * Return the number of the forfeits that were for a solver throwing
+         * an exception.
+         */
+        public synchronized int getErrors() {
+            return errors;
+        }
+
+        /**
+         * Return the first solver's points per game: 1 for a win and 1/2 for
+         * a draw. Return 1/2 if no game has been played.
+         */
+        public synchronized double getScore() {
+            int n = getGames();
+            return n == 0 ? 0.5 : (wins + draws / 2.0) / n;
+        }
+
+        /**
+         * Return how many Elo points stronger the first solver is than the
+         * second, estimated from the score. Return infinity if one solver
+         * won every game.
+         */
+        public double getElo() {
+            return elo(getScore());
+        }
+
+        /**
+         * Return the half-width of the 95% confidence interval of getElo
+         * (infinity if it reaches a score of 0 or 1).
+         */
+        public synchronized double getEloMargin() {
+            int n = getGames();
+            if (n == 0)
+                return Double.POSITIVE_INFINITY;
+            double s = getScore();
+            double variance = (wins * (1 - s) * (1 - s) + draws * (0.5 - s) * (0.5 - s)
+                    + losses * s * s) / n;
+            double deviation = Math.sqrt(variance / n);
+            double low = s - Z_95 * deviation;
+            double high = s + Z_95 * deviation;
+            if (low <= 0 || high >= 1)
+                return Double.POSITIVE_INFINITY;
+            return (elo(high) - elo(low)) / 2;
+        }
+
+        /**
+         * Return the log-likelihood ratio of the hypotheses that the first
+         * solver is elo1 (H1) or elo0 (H0) Elo points stronger than the
+         * second, given the games played. The ratio uses the normal
+         * approximation of the score used by engine testing frameworks.
+         * Each outcome counts half a game more than it was seen, so that a
+         * run of the same outcome does not make the variance 0.
+         */
+        public synchronized double getLlr(double elo0, double elo1) {
+            int n = getGames();
+            if (n == 0)
+                return 0;
+            double w = wins + 0.5;
+            double d = draws + 0.5;
+            double l = losses + 0.5;
+            double total = w + d + l;
+            double s = (w + d / 2) / total;
+            double variance = (w * (1 - s) * (1 - s) + d * (0.5 - s) * (0.5 - s) + l * s * s) / total;
+            double s0 = score(elo0);
+            double s1 = score(elo1);
+            return n * (s1 - s0) * (2 * s - s0 - s1) / (2 * variance);
+        }
+
+        /**
+         * Return the decision, given the games played, of the sequential
+         * probability ratio test of H0 (the first solver is elo0 Elo points
+         * stronger than the second) against H1 (it is elo1 stronger), with
+         * error rates alpha (of accepting H1 when H0 holds) and beta (of
+         * accepting H0 when H1 holds).
+         */
+        public Decision sprt(double elo0, double elo1, double alpha, double beta) {
+            double llr = getLlr(elo0, elo1);
+            if (llr >= Math.log((1 - beta) / alpha))
+                return Decision.H1;
+            if (llr <= Math.log(beta / (1 - alpha)))
+                return Decision.H0;
+            return Decision.CONTINUE;
+        }
+
+        /**
+         * Return the time, in nanoseconds, within which the first (side 0) or
+         * second (side 1) solver chose percent percent of its moves, 0 if it
+         * made none.
+         * Precondition: 0 <= percent <= 100 and the tournament is over.
+         */
+        public long getLatency(int side, double percent) {
+            long[] times = latencies[side];
+            if (times.length == 0)
+                return 0;
+            int rank = (int) Math.ceil(percent / 100 * times.length);
+            return times[Math.max(rank, 1) - 1];
+        }
+
+        /**
+         * Return the Elo difference for which the stronger player expects
+         * score s per game.
+         */
+        private static double elo(double s) {
+            return -400 * Math.log10(1 / s - 1);
+        }
+
+        /**
+         * Return the score per game that the stronger player expects with
+         * an Elo difference of elo.
+         */
+        private static double score(double elo) {
+            return 1 / (1 + Math.pow(10, -elo / 400));
+        }
+
+        /**
+         * Return a summary of this result.
+         */
+        @Override
+        public synchronized String toString() {
+            String s = String.format("%d games: +%d =%d -%d (%d forfeits, %d errors), score %.3f, "
+                    + "Elo %+.1f +/- %.1f%n", getGames(), wins, draws, losses, forfeits, errors,
+                    getScore(), getElo(), getEloMargin());
+            String[] names = {"first", "second"};
+            for (int side = 0; side < 2; side++) {
+                s += String.format("%s solver: %d moves, ms per move p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n",
+                        names[side], latencies[side].length, getLatency(side, 50) / 1e6,
+                        getLatency(side, 90) / 1e6, getLatency(side, 99) / 1e6,
+                        getLatency(side, 100) / 1e6);
+            }
+            return s;
+        }
+    }
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int depth1 = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int depth2 = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        Tournament t = new Tournament(p -> ai(p, depth1), p -> ai(p, depth2));
+        t.setGames(games);
+        if (args.length > 3) {
+            t.setThreads(Integer.parseInt(args[3]));
+        }
+        long start = System.nanoTime();
+        Result result = t.run();
+        System.out.println("AI depth " + depth1 + " against AI depth " + depth2 + ", "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        System.out.print(result);
+    }
+
+    /**
+     * Return an AI with player p that searches to depth d, with a small
+     * transposition table since many play at once.
+     */
+    private static AI ai(Player p, int d) {
+        return new AI(p, d, new TranspositionTable(1, TranspositionTable.Replacement.DEPTH_PREFERRED));
+    }
+}
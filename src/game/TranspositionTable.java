@@ -0,0 +1,285 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * An instance is a fixed-size cache of search results, keyed by the 64-bit
+ * hash of a position (see Board.getHash). Each entry records the depth the
+ * position was searched to, the value found, whether that value is exact or
+ * only a bound, and the best column found.
+ * <p/>
+ * Entries are grouped in buckets of two. A position can be stored in either
+ * entry of the bucket its hash selects, and the Replacement policy decides
+ * which entry a new result overwrites when the bucket is full.
+ * <p/>
+ * A table is kept from one search to the next, since the positions of a
+ * search are mostly searched again a move or two later. Each entry is
+ * stamped with the generation of the search that stored it (see
+ * newSearch), so that entries left by earlier searches, which are less and
+ * less likely to be needed, give way to those of the current search.
+ * <p/>
+ * A table can be shared by several search threads without locking. Each
+ * entry keeps its data word and its key XOR its data word. An entry that
+ * one thread reads while another is writing it has a mismatched pair, so
+ * it fails the key check and is treated as a miss rather than giving the
+ * data of another position. The statistics are not synchronized, so they
+ * are approximate when the table is shared.
+ */
+public class TranspositionTable {
+
+    /**
+     * How a full bucket makes room for a new entry.
+     */
+    public enum Replacement {
+        /**
+         * Overwrite the entry searched to the smaller depth, so the results
+         * that were most expensive to compute are kept. An entry counts as
+         * AGE_PENALTY moves shallower for each search since it was stored.
+         */
+        DEPTH_PREFERRED,
+        /**
+         * Overwrite the older entry, so the bucket keeps the two positions
+         * stored most recently.
+         */
+        ALWAYS_REPLACE
+    }
+
+    /**
+     * The value of the bound field of an entry.
+     */
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;  // the value is at least the score
+    public static final int UPPER = 2;  // the value is at most the score
+
+    /**
+     * The result of probe when the position is not in the table.
+     */
+    public static final long MISS = 0;
+
+    /**
+     * The column field of an entry that has no best column.
+     */
+    public static final int NO_COLUMN = 15;
+
+    /**
+     * How many moves shallower an entry counts as, when deciding which entry
+     * to replace, for each search since it was stored. An AI searches every
+     * other move, so the positions it searched are two moves nearer the
+     * leaves of its next search.
+     */
+    public static final int AGE_PENALTY = 2;
+
+    /**
+     * The memory used by each entry: a key and a data word.
+     */
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    /*
+     * Layout of a data word, from the lowest bit up:
+     *   32 bits score, 8 bits depth, 2 bits bound, 4 bits column, 1 bit set,
+     *   8 bits generation
+     * The set bit keeps stored words different from MISS.
+     */
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int COLUMN_SHIFT = 42;
+    private static final long SET_BIT = 1L << 46;
+    private static final int GENERATION_SHIFT = 47;
+
+    private final Replacement replacement;
+
+    /**
+     * The keys XOR data words, and the data words, of the entries. Entries
+     * 2i and 2i+1 make up bucket i.
+     */
+    private final long[] keys;
+    private final long[] data;
+
+    /**
+     * The mask that selects a bucket from a key.
+     */
+    private final int bucketMask;
+
+    /**
+     * The generation of the current search, which wraps around after 255.
+     */
+    private int generation;
+
+    private long probes;  // calls to probe
+    private long hits;    // calls to probe that found their position
+
+    /**
+     * Constructor: an empty table that uses at most megabytes MB of memory
+     * for its entries, replacing entries according to policy r.
+     * Precondition: megabytes > 0 and r is not null.
+     */
+    public TranspositionTable(int megabytes, Replacement r) {
+        if (megabytes <= 0) {
+            throw new IllegalArgumentException("A TranspositionTable needs at least 1 MB");
+        }
+        replacement = r;
+        // the largest power of two number of buckets that fits the budget
+        long buckets = Long.highestOneBit(megabytes * (1L << 20) / (2 * ENTRY_BYTES));
+        buckets = Math.min(buckets, 1 << 29);
+        keys = new long[(int) (2 * buckets)];
+        data = new long[(int) (2 * buckets)];
+        bucketMask = (int) buckets - 1;
+    }
+
+    /**
+     * Start a new generation of entries: the entries stored from now on
+     * belong to a new search, and those already stored age by one search.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Return the data word stored for the position with hash key, or MISS if
+     * the position is not in this table. Use score, depth, bound and column
+     * to read the fields of the data word. An entry that is found joins the
+     * current generation, since the current search needs it.
+     */
+    public long probe(long key) {
+        probes++;
+        int i = bucket(key);
+        for (int j = i; j < i + 2; j++) {
+            long word = data[j];
+            if ((keys[j] ^ word) == key && word != MISS) {
+                hits++;
+                if (generation(word) != generation) {
+                    write(j, key, word & ~(0xFFL << GENERATION_SHIFT)
+                            | (long) generation << GENERATION_SHIFT);
+                }
+                return word;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Store in this table that the position with hash key, searched to depth
+     * d, has value s with bound type b (one of EXACT, LOWER and UPPER) and
+     * best column c (NO_COLUMN if there is none).
+     * Precondition: 0 <= d < 256 and c in 0..NO_COLUMN.
+     */
+    public void store(long key, int d, int b, int s, int c) {
+        long word = (s & 0xFFFFFFFFL) | ((long) d << DEPTH_SHIFT) | ((long) b << BOUND_SHIFT)
+                | ((long) c << COLUMN_SHIFT) | SET_BIT | ((long) generation << GENERATION_SHIFT);
+        int i = bucket(key);
+        /*
+         * A position already in the bucket is updated in place, whatever its
+         * depth: the search cuts off only on results of the depth it needs,
+         * and the latest result is the most likely to be needed again.
+         */
+        for (int j = i; j < i + 2; j++) {
+            if ((keys[j] ^ data[j]) == key) {
+                write(j, key, word);
+                return;
+            }
+        }
+        if (replacement == Replacement.DEPTH_PREFERRED) {
+            write(worth(data[i]) < worth(data[i + 1]) ? i : i + 1, key, word);
+        } else {
+            keys[i + 1] = keys[i];
+            data[i + 1] = data[i];
+            write(i, key, word);
+        }
+    }
+
+    /**
+     * Return the depth that data word w counts as when deciding which entry
+     * to replace: its depth, less AGE_PENALTY for each search since it was
+     * stored. An empty entry is worth less than any other.
+     */
+    private int worth(long w) {
+        if (w == MISS)
+            return Integer.MIN_VALUE;
+        return depth(w) - AGE_PENALTY * ((generation - generation(w)) & 0xFF);
+    }
+
+    /**
+     * Set entry j to hold data word word for the position with hash key.
+     */
+    private void write(int j, long key, long word) {
+        data[j] = word;
+        keys[j] = key ^ word;
+    }
+
+    /**
+     * Remove all entries from this table and reset its statistics.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, MISS);
+        generation = 0;
+        probes = 0;
+        hits = 0;
+    }
+
+    /**
+     * Return the number of entries this table can hold.
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    /**
+     * Return the number of calls to probe since this table was created or
+     * last cleared.
+     */
+    public long getProbes() {
+        return probes;
+    }
+
+    /**
+     * Return the fraction of calls to probe that found their position,
+     * 0 if probe has not been called.
+     */
+    public double getHitRate() {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    /**
+     * Return the score field of data word w.
+     */
+    public static int score(long w) {
+        return (int) w;
+    }
+
+    /**
+     * Return the depth field of data word w.
+     */
+    public static int depth(long w) {
+        return (int) (w >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    /**
+     * Return the bound field of data word w.
+     */
+    public static int bound(long w) {
+        return (int) (w >>> BOUND_SHIFT) & 0x3;
+    }
+
+    /**
+     * Return the column field of data word w.
+     */
+    public static int column(long w) {
+        return (int) (w >>> COLUMN_SHIFT) & 0xF;
+    }
+
+    /**
+     * Return the generation field of data word w: the generation of the
+     * search that stored it or last found it (see newSearch).
+     */
+    public static int generation(long w) {
+        return (int) (w >>> GENERATION_SHIFT) & 0xFF;
+    }
+
+    /**
+     * Return the index of the first entry of the bucket for key.
+     */
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) << 1;
+    }
+}
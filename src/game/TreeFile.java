@@ -0,0 +1,343 @@
+package game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An instance is a game tree dump in the indexed format of TreeWriter,
+ * opened for reading. The file is memory-mapped rather than read, so a
+ * dump of any size opens at once, and only the parts of it that are looked
+ * at are ever loaded from disk.
+ * <p/>
+ * A dump is a header (int MAGIC, int VERSION, long number of nodes)
+ * followed by one record of RECORD_BYTES per node, in depth-first order:
+ * <p/>
+ *   long position key, long number of the first node after the node's
+ *   subtree, byte number of children, byte column of the last move (-1
+ *   for the root), byte depth, byte player ordinal, int value
+ * <p/>
+ * Nodes are numbered from 0, the root, in the order of their records. The
+ * first child of a node is the node after it, and each further child is
+ * the node at which the subtree of the one before it ends, so any node can
+ * be reached in a few steps from the root.
+ * <p/>
+ * A position key packs a whole board in a long: the 7 bits of a column
+ * hold a 1 above its top disc and, below that, a 1 for each RED disc. Two
+ * boards have the same key only if they have the same discs.
+ */
+public class TreeFile implements Closeable {
+
+    /**
+     * The first int of an indexed dump, and the version of its format.
+     */
+    public static final int MAGIC = 0x43345449;  // "C4TI"
+    public static final int VERSION = 1;
+
+    /*
+     * The sizes of the header and of a record, and the offsets of the node
+     * count in the header and of the fields of a record.
+     */
+    static final int HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES;
+    static final int RECORD_BYTES = 2 * Long.BYTES + 4 + Integer.BYTES;
+    static final int COUNT_OFFSET = 2 * Integer.BYTES;
+    static final int END_OFFSET = Long.BYTES;
+    private static final int CHILDREN_OFFSET = 2 * Long.BYTES;
+    private static final int COLUMN_OFFSET = CHILDREN_OFFSET + 1;
+    private static final int DEPTH_OFFSET = CHILDREN_OFFSET + 2;
+    private static final int PLAYER_OFFSET = CHILDREN_OFFSET + 3;
+    private static final int VALUE_OFFSET = CHILDREN_OFFSET + 4;
+
+    /**
+     * A buffer can map at most 2 GB, so the records are mapped in chunks
+     * of this many.
+     */
+    private static final int CHUNK_RECORDS = (1 << 30) / RECORD_BYTES;
+
+    private static final int COLUMN_BITS = Board.NUM_ROWS + 1;
+    private static final long COLUMN = (1L << COLUMN_BITS) - 1;
+
+    /**
+     * The bit of the bottom tile of each column.
+     */
+    private static final long BOTTOM;
+
+    static {
+        long bottom = 0;
+        for (int c = 0; c < Board.NUM_COLS; c++) {
+            bottom |= 1L << (c * COLUMN_BITS);
+        }
+        BOTTOM = bottom;
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+
+    /**
+     * Constructor: the dump in file f.
+     * Throw an IllegalArgumentException if f is not an indexed dump, or
+     * is shorter than its header says.
+     */
+    public TreeFile(Path f) throws IOException {
+        channel = FileChannel.open(f, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (channel.size() >= HEADER_BYTES) {
+                channel.read(header, 0);
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC
+                    || header.getInt() != VERSION)
+                throw new IllegalArgumentException(f + " is not a game tree dump");
+            size = header.getLong();
+            if (size < 1 || channel.size() < offset(size))
+                throw new IllegalArgumentException(f + " is cut short");
+            chunks = new MappedByteBuffer[(int) ((size - 1) / CHUNK_RECORDS + 1)];
+            for (int i = 0; i < chunks.length; i++) {
+                long first = (long) i * CHUNK_RECORDS;
+                long records = Math.min(CHUNK_RECORDS, size - first);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset(first),
+                        records * RECORD_BYTES);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the tree of States rooted at s to file f, replacing it, and
+     * return the number of nodes written.
+     */
+    public static long write(State s, Path f) throws IOException {
+        try (FileChannel c = create(f)) {
+            return writer().write(s, c);
+        }
+    }
+
+    /**
+     * Write the subtree of GameTree t rooted at node n to file f, replacing
+     * it, and return the number of nodes written.
+     */
+    public static long write(GameTree t, int n, Path f) throws IOException {
+        try (FileChannel c = create(f)) {
+            return writer().write(t, n, c);
+        }
+    }
+
+    /**
+     * Return the number of nodes in this dump.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Return the root node.
+     */
+    public long getRoot() {
+        return 0;
+    }
+
+    /**
+     * Return the number of children of node n.
+     */
+    public int getChildCount(long n) {
+        return record(n).get(field(n, CHILDREN_OFFSET));
+    }
+
+    /**
+     * Return the i-th child of node n, counting the children in the order
+     * they were written from 0.
+     * Precondition: 0 <= i < getChildCount(n).
+     */
+    public long getChild(long n, int i) {
+        if (i < 0 || i >= getChildCount(n))
+            throw new IllegalArgumentException("Node " + n + " has no child " + i);
+        long child = n + 1;
+        for (; i > 0; i--) {
+            child = getSubtreeEnd(child);
+        }
+        return child;
+    }
+
+    /**
+     * Return the child of node n reached by a move in column c, or -1 if
+     * there is none in this dump.
+     */
+    public long findChild(long n, int c) {
+        long child = n + 1;
+        for (int i = getChildCount(n); i > 0; i--) {
+            if (getColumn(child) == c)
+                return child;
+            child = getSubtreeEnd(child);
+        }
+        return -1;
+    }
+
+    /**
+     * Return the number of nodes in the subtree rooted at node n, n
+     * included.
+     */
+    public long getSubtreeSize(long n) {
+        return getSubtreeEnd(n) - n;
+    }
+
+    /**
+     * Return the number of moves from the root to node n.
+     */
+    public int getDepth(long n) {
+        return record(n).get(field(n, DEPTH_OFFSET));
+    }
+
+    /**
+     * Return the player to play at node n.
+     */
+    public Player getPlayer(long n) {
+        return Player.values()[record(n).get(field(n, PLAYER_OFFSET))];
+    }
+
+    /**
+     * Return the move that led to node n, or null if n is the root.
+     */
+    public Move getLastMove(long n) {
+        int c = getColumn(n);
+        return c < 0 ? null : Move.of(getPlayer(n).opponent(), c);
+    }
+
+    /**
+     * Return the value of node n.
+     */
+    public int getValue(long n) {
+        return record(n).getInt(field(n, VALUE_OFFSET));
+    }
+
+    /**
+     * Return the position key of node n (see the class comment).
+     */
+    public long getKey(long n) {
+        return record(n).getLong(field(n, 0));
+    }
+
+    /**
+     * Return a new Board with the layout of node n.
+     */
+    public Board getBoard(long n) {
+        return board(getKey(n));
+    }
+
+    /**
+     * Return the first node, in depth-first order, of the subtree rooted at
+     * node n whose board has the discs of Board b, or -1 if there is none.
+     * Only the keys of the subtree are read, one after the other. A dump
+     * holds only boards of the standard size.
+     */
+    public long find(long n, Board b) {
+        if (b.getGeometry() != Geometry.STANDARD)
+            return -1;
+        long k = key(b);
+        long end = getSubtreeEnd(n);
+        for (long m = n; m < end; m++) {
+            if (getKey(m) == k)
+                return m;
+        }
+        return -1;
+    }
+
+    /**
+     * Close the file. Nodes must not be read after this.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Return the position key (see the class comment) of Board b.
+     */
+    static long key(Board b) {
+        long red = b.getDiscs(Player.RED);
+        /*
+         * Adding the bottom bit of a column to its discs carries up to the
+         * tile above the top disc, and clears those below it.
+         */
+        return ((red | b.getDiscs(Player.YELLOW)) + BOTTOM) | red;
+    }
+
+    /**
+     * Return a new Board with the discs of position key k.
+     */
+    static Board board(long k) {
+        long red = 0;
+        long yellow = 0;
+        for (int c = 0; c < Board.NUM_COLS; c++) {
+            long column = (k >>> (c * COLUMN_BITS)) & COLUMN;
+            long discs = Long.highestOneBit(column) - 1;
+            red |= (column & discs) << (c * COLUMN_BITS);
+            yellow |= (~column & discs) << (c * COLUMN_BITS);
+        }
+        return new Board(red, yellow);
+    }
+
+    /**
+     * Return the byte offset of the record of node n in a dump.
+     */
+    static long offset(long n) {
+        return HEADER_BYTES + n * RECORD_BYTES;
+    }
+
+    /**
+     * Return the mapped chunk that holds the record of node n.
+     * Throw an IllegalArgumentException if there is no node n.
+     */
+    private ByteBuffer record(long n) {
+        if (n < 0 || n >= size)
+            throw new IllegalArgumentException("There is no node " + n);
+        return chunks[(int) (n / CHUNK_RECORDS)];
+    }
+
+    /**
+     * Return the index, in its chunk, of the field at offset in the record
+     * of node n.
+     */
+    private static int field(long n, int offset) {
+        return (int) (n % CHUNK_RECORDS) * RECORD_BYTES + offset;
+    }
+
+    /**
+     * Return the node at which the subtree rooted at node n ends.
+     */
+    private long getSubtreeEnd(long n) {
+        return record(n).getLong(field(n, END_OFFSET));
+    }
+
+    /**
+     * Return the column of the move that led to node n, or -1 if n is the
+     * root.
+     */
+    private int getColumn(long n) {
+        return record(n).get(field(n, COLUMN_OFFSET));
+    }
+
+    /**
+     * Return a new channel to write file f, emptied.
+     */
+    private static FileChannel create(Path f) throws IOException {
+        return FileChannel.open(f, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Return a writer of indexed dumps.
+     */
+    private static TreeWriter writer() {
+        TreeWriter w = new TreeWriter();
+        w.setFormat(TreeWriter.Format.INDEXED);
+        return w;
+    }
+}
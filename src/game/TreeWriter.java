@@ -0,0 +1,337 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An instance writes game trees, of States or a GameTree, to a channel as
+ * it walks them, node by node, through a fixed-size buffer. However large
+ * the tree, writing it takes no more memory than the buffer and one node.
+ * <p/>
+ * The text format is that of State.toString: each node's player, value and
+ * board, with its children below it, indented. The binary format is a
+ * header (int MAGIC, int VERSION) followed by one record per node in
+ * depth-first order:
+ * <p/>
+ *   byte depth, byte player ordinal, byte column of the last move (-1 for
+ *   the root), int value, long RED discs, long YELLOW discs
+ * <p/>
+ * where the discs are bitboards with bit col * (NUM_ROWS + 1) + h for the
+ * disc h tiles above the bottom of column col. A node's children are the
+ * records after it that are one deeper, up to the next record that is not
+ * deeper, so a dump cut short is still readable.
+ * <p/>
+ * The indexed format, described in TreeFile, has fixed-size records that
+ * say where each subtree ends, so that a TreeFile can go straight to any
+ * node of a dump without reading those before it. A writer fills in the
+ * end of a subtree once it has written it, so an indexed dump can only be
+ * written to a FileChannel.
+ * <p/>
+ * A writer can stop at a maximum depth below the root and after a maximum
+ * number of nodes.
+ */
+public class TreeWriter {
+
+    /**
+     * The formats a tree can be written in.
+     */
+    public enum Format {
+        TEXT, BINARY, INDEXED
+    }
+
+    /**
+     * The first int of a binary dump, and the version of its format.
+     */
+    public static final int MAGIC = 0x43345444;  // "C4TD"
+    public static final int VERSION = 1;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private Format format = Format.TEXT;
+    private int maxDepth = Integer.MAX_VALUE;
+    private long maxNodes = Long.MAX_VALUE;
+
+    /**
+     * The channel being written to and the buffer in front of it.
+     */
+    private WritableByteChannel out;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+    /**
+     * For the indexed format: the channel being written to, its position
+     * when the write began, and the number of bytes of the dump that have
+     * left the buffer.
+     */
+    private FileChannel file;
+    private long base;
+    private long drained;
+
+    /**
+     * The number of nodes written so far by the current write, and whether
+     * it has left out a node for the maximum number of nodes.
+     */
+    private long nodes;
+    private boolean cut;
+
+    /**
+     * The indentation of the nodes at each depth in the text format.
+     */
+    private static final String[] INDENTS = new String[Geometry.MAX_TILES + 1];
+
+    static {
+        INDENTS[0] = "";
+        for (int d = 1; d < INDENTS.length; d++) {
+            INDENTS[d] = INDENTS[d - 1] + "   ";
+        }
+    }
+
+    /**
+     * Write trees in format f (TEXT by default).
+     */
+    public void setFormat(Format f) {
+        format = f;
+    }
+
+    /**
+     * Write only the nodes at most d moves below the root (all by default).
+     * Precondition: d >= 0.
+     */
+    public void setMaxDepth(int d) {
+        if (d < 0) {
+            throw new IllegalArgumentException("The maximum depth cannot be negative");
+        }
+        maxDepth = d;
+    }
+
+    /**
+     * Stop after writing n nodes (by default, write them all).
+     * Precondition: n >= 1.
+     */
+    public void setMaxNodes(long n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("A tree dump needs at least one node");
+        }
+        maxNodes = n;
+    }
+
+    /**
+     * Write the tree of States rooted at s to channel c, and return the
+     * number of nodes written. c is not closed.
+     * Throw an IllegalArgumentException if the format is INDEXED and c is
+     * not a FileChannel, or if the format is binary and the boards are not
+     * of the standard size.
+     */
+    public long write(State s, WritableByteChannel c) throws IOException {
+        start(c, s.getBoard());
+        writeState(s, 0);
+        return finish();
+    }
+
+    /**
+     * Write the subtree of GameTree t rooted at node n to channel c, and
+     * return the number of nodes written. c is not closed.
+     * Throw an IllegalArgumentException if the format is INDEXED and c is
+     * not a FileChannel, or if the format is binary and the boards are not
+     * of the standard size.
+     */
+    public long write(GameTree t, int n, WritableByteChannel c) throws IOException {
+        Board b = t.getBoard(n);
+        start(c, b);
+        writeNode(t, n, b, t.getPlayer(n), 0);
+        return finish();
+    }
+
+    /**
+     * Prepare to write a tree whose root has Board b to channel c.
+     */
+    private void start(WritableByteChannel c, Board b) throws IOException {
+        if (format != Format.TEXT && b.getGeometry() != Geometry.STANDARD)
+            throw new IllegalArgumentException("Binary dumps hold boards of the standard size only");
+        out = c;
+        nodes = 0;
+        cut = false;
+        drained = 0;
+        buffer.clear();
+        if (format == Format.BINARY) {
+            buffer.putInt(MAGIC).putInt(VERSION);
+        } else if (format == Format.INDEXED) {
+            if (!(c instanceof FileChannel))
+                throw new IllegalArgumentException("An indexed dump must be written to a FileChannel");
+            file = (FileChannel) c;
+            base = file.position();
+            /*
+             * The node count is filled in by finish.
+             */
+            buffer.putInt(TreeFile.MAGIC).putInt(TreeFile.VERSION).putLong(0);
+        }
+    }
+
+    /**
+     * Write out what is left in the buffer, noting in the text format if
+     * the tree was cut short, and return the number of nodes written.
+     */
+    private long finish() throws IOException {
+        if (format == Format.TEXT && cut) {
+            put("... stopped after " + nodes + " nodes\n");
+        }
+        if (format == Format.INDEXED) {
+            patch(TreeFile.COUNT_OFFSET, nodes);
+        }
+        drain();
+        out = null;
+        file = null;
+        return nodes;
+    }
+
+    /**
+     * Write State s, which is d moves below the root, and its descendants.
+     */
+    private void writeState(State s, int d) throws IOException {
+        State[] children = s.getChildren();
+        int count = children == null || d >= maxDepth ? 0 : children.length;
+        long node = nodes;
+        if (!writeNode(s.getPlayer(), s.getLastMove(), s.getValue(), s.getBoard(), d, count))
+            return;
+        int i = 0;
+        for (; i < count && nodes < maxNodes; i++) {
+            writeState(children[i], d + 1);
+        }
+        if (i < count)
+            cut = true;
+        endNode(node, i);
+    }
+
+    /**
+     * Write node n of GameTree t, which is d moves below the root, has
+     * board b and Player p to play, and its descendants. b is unchanged
+     * when this returns.
+     */
+    private void writeNode(GameTree t, int n, Board b, Player p, int d) throws IOException {
+        int count = d >= maxDepth ? 0 : t.getChildCount(n);
+        long node = nodes;
+        if (!writeNode(p, t.getLastMove(n), t.getValue(n), b, d, count))
+            return;
+        int i = 0;
+        for (; i < count && nodes < maxNodes; i++) {
+            int child = t.getChild(n, i);
+            int c = t.getLastMove(child).getColumn();
+            b.makeMove(p, c);
+            writeNode(t, child, b, p.opponent(), d + 1);
+            b.undoMove(c);
+        }
+        if (i < count)
+            cut = true;
+        endNode(node, i);
+    }
+
+    /**
+     * Write a node d moves below the root, with Player p to play, last move
+     * m (null for none), value v and board b, whose first count children
+     * are to be written after it. Return false if no more nodes may be
+     * written.
+     */
+    private boolean writeNode(Player p, Move m, int v, Board b, int d, int count)
+            throws IOException {
+        if (nodes >= maxNodes) {
+            cut = true;
+            return false;
+        }
+        nodes++;
+        if (format == Format.BINARY) {
+            if (buffer.remaining() < 3 + Integer.BYTES + 2 * Long.BYTES)
+                drain();
+            buffer.put((byte) d).put((byte) p.ordinal()).put((byte) (m == null ? -1 : m.getColumn()))
+                    .putInt(v).putLong(b.getDiscs(Player.RED)).putLong(b.getDiscs(Player.YELLOW));
+            return true;
+        }
+        if (format == Format.INDEXED) {
+            if (buffer.remaining() < TreeFile.RECORD_BYTES)
+                drain();
+            /*
+             * The end of the subtree and the number of children are filled
+             * in by endNode.
+             */
+            buffer.putLong(TreeFile.key(b)).putLong(0).put((byte) 0)
+                    .put((byte) (m == null ? -1 : m.getColumn())).put((byte) d).put((byte) p.ordinal())
+                    .putInt(v);
+            return true;
+        }
+        String ind = INDENTS[Math.min(d, INDENTS.length - 1)];
+        put(ind + p + " to play\n" + ind + "Value: " + v + "\n" + b.toString(ind) + "\n");
+        if (count > 0) {
+            put(ind + "Children at depth " + (d + 1) + ":\n" + ind + "----------------\n");
+        }
+        return true;
+    }
+
+    /**
+     * In the indexed format, fill in the record of node n, whose subtree
+     * has just been written, with where the subtree ends and its number of
+     * children, the first count children of the node.
+     */
+    private void endNode(long n, int count) throws IOException {
+        if (format != Format.INDEXED)
+            return;
+        long offset = TreeFile.offset(n) + TreeFile.END_OFFSET;
+        patch(offset, nodes);
+        /*
+         * The child count is the byte after the end.
+         */
+        offset += Long.BYTES;
+        if (offset >= drained) {
+            buffer.put((int) (offset - drained), (byte) count);
+        } else {
+            write(offset, ByteBuffer.allocate(1).put(0, (byte) count));
+        }
+    }
+
+    /**
+     * Set the long at byte offset of the dump being written to v, in the
+     * buffer if it has not been written out yet and in the file otherwise.
+     */
+    private void patch(long offset, long v) throws IOException {
+        if (offset >= drained) {
+            buffer.putLong((int) (offset - drained), v);
+        } else {
+            write(offset, ByteBuffer.allocate(Long.BYTES).putLong(0, v));
+        }
+    }
+
+    /**
+     * Write bytes at byte offset of the dump being written, in the file.
+     */
+    private void write(long offset, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            file.write(bytes, base + offset + bytes.position());
+        }
+    }
+
+    /**
+     * Add text s, in UTF-8, to the output.
+     */
+    private void put(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; ) {
+            if (!buffer.hasRemaining())
+                drain();
+            int n = Math.min(buffer.remaining(), bytes.length - i);
+            buffer.put(bytes, i, n);
+            i += n;
+        }
+    }
+
+    /**
+     * Write the buffer to the channel and empty it.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        drained += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
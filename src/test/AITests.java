@@ -1,13 +1,21 @@
 package test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import game.AI;
 import game.Board;
+import game.GameTree;
+import game.Geometry;
 import game.Move;
 import game.Player;
 import game.Solver;
 import game.State;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 
 public class AITests {
@@ -89,6 +97,280 @@ public class AITests {
         Solver ai = new AI(Player.RED, 10);
         ai.getMoves(null);
     }
+
+    /**
+     * The moves returned by getMoves should be exactly the children of a
+     * full game tree that have the root's minimax value.
+     */
+    @Test
+    public void testGetMovesMatchesGameTree() {
+        Board board = new Board();
+        board.makeMove(new Move(Player.RED, 3));
+        board.makeMove(new Move(Player.YELLOW, 2));
+        board.makeMove(new Move(Player.RED, 4));
+        board.makeMove(new Move(Player.YELLOW, 4));
+        AI ai = new AI(Player.RED, 4);
+        State root = new State(Player.RED, board, null);
+        AI.createGameTree(root, 4);
+        AI.minimax(ai, root);
+        List<Integer> expected = new ArrayList<>();
+        for (State child : root.getChildren()) {
+            if (child.getValue() == root.getValue())
+                expected.add(child.getLastMove().getColumn());
+        }
+        List<Integer> actual = new ArrayList<>();
+        for (Move move : ai.getMoves(board)) {
+            actual.add(move.getColumn());
+        }
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * On boards of other shapes, including ones whose columns take two
+     * words, getMoves should still return the children of a full game
+     * tree that have the root's minimax value.
+     */
+    @Test
+    public void testGetMovesOnOtherGeometries() {
+        Geometry[] geometries = {Geometry.of(5, 4), Geometry.of(9, 7), Geometry.of(8, 8)};
+        for (Geometry geometry : geometries) {
+            Board board = new Board(geometry);
+            int center = geometry.getColumns() / 2;
+            board.makeMove(Player.RED, center);
+            board.makeMove(Player.YELLOW, center - 1);
+            board.makeMove(Player.RED, geometry.getColumns() - 1);
+            AI ai = new AI(Player.YELLOW, 4);
+            State root = new State(Player.YELLOW, board, null);
+            AI.createGameTree(root, 4);
+            AI.minimax(ai, root);
+            List<Integer> expected = new ArrayList<>();
+            for (State child : root.getChildren()) {
+                if (child.getValue() == root.getValue())
+                    expected.add(child.getLastMove().getColumn());
+            }
+            List<Integer> actual = new ArrayList<>();
+            for (Move move : ai.getMoves(board)) {
+                actual.add(move.getColumn());
+            }
+            assertEquals(geometry.toString(), expected, actual);
+        }
+    }
+
+    /**
+     * A compact GameTree should hold the same tree, with the same minimax
+     * values, as a tree of States.
+     */
+    @Test
+    public void testCompactGameTreeMatchesStates() {
+        Board board = new Board();
+        board.makeMove(new Move(Player.RED, 3));
+        board.makeMove(new Move(Player.YELLOW, 2));
+        AI ai = new AI(Player.RED, 4);
+        State root = new State(Player.RED, board, null);
+        AI.createGameTree(root, 4);
+        AI.minimax(ai, root);
+        GameTree tree = AI.createGameTree(board, Player.RED, 4);
+        ai.minimax(tree);
+        assertEquals(1 + 7 + 7 * 7 + 7 * 7 * 7 + 7 * 7 * 7 * 7, tree.size());
+        assertSameTree(root, tree.toState(tree.getRoot()));
+        int child = tree.getChild(tree.getRoot(), 5);
+        assertEquals(root.getChildren()[5].getBoard().toString(), tree.getBoard(child).toString());
+        assertEquals(Player.YELLOW, tree.getPlayer(child));
+    }
+
+    /**
+     * Assert that the trees of States expected and actual have the same
+     * moves, players and values.
+     */
+    private static void assertSameTree(State expected, State actual) {
+        assertEquals(expected.getValue(), actual.getValue());
+        assertEquals(expected.getPlayer(), actual.getPlayer());
+        assertEquals(String.valueOf(expected.getLastMove()), String.valueOf(actual.getLastMove()));
+        assertEquals(expected.getChildren().length, actual.getChildren().length);
+        for (int i = 0; i < expected.getChildren().length; i++) {
+            assertSameTree(expected.getChildren()[i], actual.getChildren()[i]);
+        }
+    }
+
+    /**
+     * An AI with a time budget should still find the winning moves, and
+     * answer within about its budget.
+     */
+    @Test
+    public void testTimedGetWinningMoves() {
+        Board board = new Board();
+        board.makeMove(new Move(Player.RED, 1));
+        board.makeMove(new Move(Player.YELLOW, 2));
+        board.makeMove(new Move(Player.RED, 2));
+        board.makeMove(new Move(Player.YELLOW, 1));
+        board.makeMove(new Move(Player.RED, 3));
+        board.makeMove(new Move(Player.YELLOW, 3));
+        board.makeMove(new Move(Player.RED, 3));
+        board.makeMove(new Move(Player.YELLOW, 0));
+        board.makeMove(new Move(Player.RED, 4));
+        board.makeMove(new Move(Player.YELLOW, 5));
+        board.makeMove(new Move(Player.RED, 2));
+        board.makeMove(new Move(Player.YELLOW, 4));
+        board.makeMove(new Move(Player.RED, 4));
+        board.makeMove(new Move(Player.YELLOW, 6));
+        AI ai = new AI(Player.RED, 200, TimeUnit.MILLISECONDS);
+        long start = System.currentTimeMillis();
+        Move[] moves = ai.getMoves(board);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertTrue(ai.getDepthReached() >= 1);
+        assertEquals(2, moves.length);
+        assertEquals(1, moves[0].getColumn());
+        assertEquals(4, moves[1].getColumn());
+    }
+
+    /**
+     * With move ordering most cut offs should come from the first move tried.
+     */
+    @Test
+    public void testFirstMoveCutoffRate() {
+        AI ai = new AI(Player.RED, 8);
+        ai.getMoves(new Board());
+        assertTrue(ai.getFirstMoveCutoffRate() > 0.5);
+        assertTrue(ai.getFirstMoveCutoffRate() <= 1);
+    }
+
+    /**
+     * A parallel search should choose exactly the moves the sequential one does.
+     */
+    @Test
+    public void testParallelGetMovesMatchesSequential() {
+        Board board = new Board();
+        board.makeMove(new Move(Player.RED, 3));
+        board.makeMove(new Move(Player.YELLOW, 3));
+        board.makeMove(new Move(Player.RED, 2));
+        AI sequential = new AI(Player.YELLOW, 9);
+        AI parallel = new AI(Player.YELLOW, 9);
+        parallel.setParallelism(4);
+        Move[] expected = sequential.getMoves(board);
+        Move[] actual = parallel.getMoves(board);
+        parallel.setParallelism(1);
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getColumn(), actual[i].getColumn());
+        }
+    }
+
+    /**
+     * A Lazy SMP search should choose exactly the moves the sequential one does.
+     */
+    @Test
+    public void testLazySmpGetMovesMatchesSequential() {
+        Board board = new Board();
+        board.makeMove(new Move(Player.RED, 3));
+        board.makeMove(new Move(Player.YELLOW, 4));
+        AI sequential = new AI(Player.RED, 9);
+        AI lazySmp = new AI(Player.RED, 9);
+        lazySmp.setParallelism(3, AI.Parallelism.LAZY_SMP);
+        Move[] expected = sequential.getMoves(board);
+        Move[] actual = lazySmp.getMoves(board);
+        lazySmp.setParallelism(1);
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getColumn(), actual[i].getColumn());
+        }
+    }
+
+    /**
+     * An AI that has pondered the opponent's reply should answer it with
+     * the moves it would have searched for, without searching again.
+     */
+    @Test
+    public void testPonderedReplyIsInstant() throws InterruptedException {
+        Board board = new Board();
+        board.makeMove(new Move(Player.RED, 3));
+        AI ai = new AI(Player.RED, 7);
+        ai.setPondering(true);
+        ai.ponder(board);
+        for (int i = 0; i < 600 && ai.isPondering(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(!ai.isPondering());
+        for (int column = 0; column < Board.NUM_COLS; column++) {
+            Board reply = new Board(board);
+            reply.makeMove(new Move(Player.YELLOW, column));
+            Move[] expected = new AI(Player.RED, 7).getMoves(reply);
+            Move[] actual = ai.getMoves(reply);
+            assertEquals(0, ai.getNodesSearched());
+            assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i].getColumn(), actual[i].getColumn());
+            }
+        }
+        ai.setPondering(false);
+    }
+
+    /**
+     * Pondering on a board wider than 7 columns should keep the replies to
+     * the columns past 6, here the only winning one.
+     */
+    @Test
+    public void testPonderOnWideBoard() throws InterruptedException {
+        Board board = new Board(Geometry.of(8, 8));
+        board.makeMove(Player.RED, 4);
+        board.makeMove(Player.YELLOW, 0);
+        board.makeMove(Player.RED, 5);
+        board.makeMove(Player.YELLOW, 0);
+        board.makeMove(Player.RED, 6);
+        AI ai = new AI(Player.RED, 3);
+        ai.setPondering(true);
+        ai.ponder(board);
+        for (int i = 0; i < 600 && ai.isPondering(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(!ai.isPondering());
+        board.makeMove(Player.YELLOW, 3);
+        Move[] moves = ai.getMoves(board);
+        assertEquals(0, ai.getNodesSearched());
+        assertEquals(1, moves.length);
+        assertEquals(7, moves[0].getColumn());
+        ai.setPondering(false);
+    }
+
+    /**
+     * evaluateBoard should count each piece in a win location, as winLocations
+     * lists them, for or against the AI's player.
+     */
+    @Test
+    public void testEvaluateBoardMatchesWinLocations() {
+        Board board = new Board();
+        int[] columns = {3, 3, 2, 4, 4, 1, 5, 5, 6, 0};
+        Player player = Player.RED;
+        AI ai = new AI(Player.YELLOW, 1);
+        for (int column : columns) {
+            board.makeMove(new Move(player, column));
+            player = player.opponent();
+            int expected = 0;
+            for (Player[] loc : board.winLocations()) {
+                for (Player p : loc) {
+                    expected += p == Player.YELLOW ? 1 : p != null ? -1 : 0;
+                }
+            }
+            assertEquals(expected, ai.evaluateBoard(board));
+        }
+    }
+
+    /**
+     * An AI asked for moves asynchronously should search no later than the
+     * deadline, and stop searching, freeing its thread for the next request,
+     * when the request is cancelled.
+     */
+    @Test
+    public void testGetMovesAsync() throws Exception {
+        AI ai = new AI(Player.RED, Board.NUM_ROWS * Board.NUM_COLS);
+        CompletableFuture<Move[]> unwanted = ai.getMovesAsync(new Board());
+        assertTrue(unwanted.cancel(true));
+        long start = System.currentTimeMillis();
+        Move[] moves = ai.getMovesAsync(new Board(), 200, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertTrue(moves.length > 0);
+        assertTrue(ai.getDepthReached() >= 1);
+        assertTrue(ai.getDepthReached() < Board.NUM_ROWS * Board.NUM_COLS);
+    }
     
     
 }
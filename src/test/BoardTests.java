@@ -2,9 +2,12 @@ package test;
 
 import static org.junit.Assert.assertEquals;
 import game.Board;
+import game.Geometry;
 import game.Move;
 import game.Player;
 
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -78,4 +81,197 @@ public class BoardTests {
         }
     }
 
+    /**
+     * Tiles should be reported at the row they landed on, counting from the top.
+     */
+    @Test
+    public void testGetTileAfterMoves() {
+        Board board = new Board();
+        board.makeMove(new Move(Player.RED, 3));
+        board.makeMove(new Move(Player.YELLOW, 3));
+        assertEquals(Player.RED, board.getTile(Board.NUM_ROWS - 1, 3));
+        assertEquals(Player.YELLOW, board.getTile(Board.NUM_ROWS - 2, 3));
+        assertEquals(null, board.getTile(Board.NUM_ROWS - 3, 3));
+        assertEquals(null, board.getTile(Board.NUM_ROWS - 1, 4));
+    }
+
+    /**
+     * A diagonal line of four should be detected as a win.
+     */
+    @Test
+    public void testHasConnectFourDiagonal() {
+        Board board = new Board();
+        for (int col = 0; col < 4; col++) {
+            for (int i = 0; i < col; i++) {
+                board.makeMove(new Move(Player.YELLOW, col));
+            }
+            Assert.assertNull(board.hasConnectFour());
+            board.makeMove(new Move(Player.RED, col));
+        }
+        assertEquals(Player.RED, board.hasConnectFour());
+    }
+
+    /**
+     * A board is only full once every column has been filled.
+     */
+    @Test
+    public void testIsFull() {
+        Board board = new Board();
+        // Alternate colours up each column, shifting the pattern every two
+        // columns so that nobody wins.
+        for (int col = 0; col < Board.NUM_COLS; col++) {
+            for (int i = 0; i < Board.NUM_ROWS; i++) {
+                Assert.assertFalse(board.isFull());
+                board.makeMove(new Move((i + col / 2) % 2 == 0 ? Player.RED : Player.YELLOW, col));
+            }
+        }
+        Assert.assertNull(board.hasConnectFour());
+        Assert.assertTrue(board.isFull());
+    }
+
+    /**
+     * There are 69 lines of four on a 6x7 board, all empty on a new board.
+     */
+    @Test
+    public void testWinLocationsNewBoard() {
+        List<Player[]> locations = new Board().winLocations();
+        assertEquals(69, locations.size());
+        for (Player[] loc : locations) {
+            Assert.assertArrayEquals(new Player[4], loc);
+        }
+    }
+
+    /**
+     * The possible columns mask should have a bit for every column that is not full.
+     */
+    @Test
+    public void testGetPossibleColumns() {
+        Board board = new Board();
+        assertEquals((1 << Board.NUM_COLS) - 1, board.getPossibleColumns());
+        for (int i = 0; i < Board.NUM_ROWS; i++) {
+            board.makeMove(new Move(i % 2 == 0 ? Player.RED : Player.YELLOW, 2));
+        }
+        assertEquals((1 << Board.NUM_COLS) - 1 - (1 << 2), board.getPossibleColumns());
+    }
+
+    /**
+     * Undoing a winning move should clear the winner and the disc.
+     */
+    @Test
+    public void testUndoMove() {
+        Board board = new Board();
+        for (int i = 0; i < 4; i++) {
+            board.makeMove(new Move(Player.RED, 1));
+        }
+        assertEquals(Player.RED, board.hasConnectFour());
+        board.undoMove(1);
+        Assert.assertNull(board.hasConnectFour());
+        Assert.assertNull(board.getTile(Board.NUM_ROWS - 4, 1));
+        assertEquals(Player.RED, board.getTile(Board.NUM_ROWS - 3, 1));
+        assertEquals(Board.NUM_COLS, board.getPossibleMoves(Player.YELLOW).length);
+    }
+
+    /**
+     * Shouldn't allow a move to be taken back from an empty column.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUndoMoveOnEmptyColumn() {
+        new Board().undoMove(0);
+    }
+
+    /**
+     * A board and its mirror image should swap hashes, and only a board
+     * that is its own mirror image should be symmetric.
+     */
+    @Test
+    public void testMirrorHash() {
+        Board board = new Board();
+        Board mirror = new Board();
+        Assert.assertTrue(board.isSymmetric());
+        assertEquals(board.getHash(), board.getMirrorHash());
+        int[] columns = {0, 2, 2, 5, 1};
+        Player player = Player.RED;
+        for (int col : columns) {
+            board.makeMove(player, col);
+            mirror.makeMove(player, Board.NUM_COLS - 1 - col);
+            player = player.opponent();
+        }
+        assertEquals(board.getHash(), mirror.getMirrorHash());
+        assertEquals(board.getMirrorHash(), mirror.getHash());
+        Assert.assertFalse(board.isSymmetric());
+        board.makeMove(Player.RED, 3);
+        board.undoMove(3);
+        assertEquals(board.getHash(), mirror.getMirrorHash());
+
+        Board symmetric = new Board();
+        symmetric.makeMove(Player.RED, 1);
+        symmetric.makeMove(Player.YELLOW, 3);
+        symmetric.makeMove(Player.RED, 5);
+        Assert.assertTrue(symmetric.isSymmetric());
+        assertEquals(symmetric.getHash(), symmetric.getMirrorHash());
+    }
+
+    /**
+     * On an 8x8 board, whose columns take two words, a line that crosses
+     * from one word to the other should win, and moves in the second word
+     * should be taken back and mirrored like the others.
+     */
+    @Test
+    public void testTwoWordGeometry() {
+        Geometry geometry = Geometry.of(8, 8);
+        assertEquals(2, geometry.getWords());
+        Board board = new Board(geometry);
+        assertEquals(8 * 8, board.getEmptyCount());
+        assertEquals(0xFF, board.getPossibleColumns());
+        Board mirror = new Board(geometry);
+        for (int col = 4; col < 7; col++) {
+            board.makeMove(Player.RED, col);
+            board.makeMove(Player.YELLOW, col);
+            mirror.makeMove(Player.RED, 7 - col);
+            mirror.makeMove(Player.YELLOW, 7 - col);
+        }
+        assertEquals(board.getHash(), mirror.getMirrorHash());
+        board.makeMove(Player.RED, 7);
+        assertEquals(Player.RED, board.hasConnectFour());
+        assertEquals(Player.RED, board.getTile(7, 7));
+        assertEquals(Player.YELLOW, board.getTile(6, 4));
+        assertEquals(0, board.getPossibleColumns());
+        board.undoMove(7);
+        assertEquals(null, board.hasConnectFour());
+        assertEquals(board.getHash(), mirror.getMirrorHash());
+        board.undoMove(6);
+        board.undoMove(6);
+        for (int i = 0; i < 8; i++) {
+            board.makeMove(i % 2 == 0 ? Player.YELLOW : Player.RED, 7);
+        }
+        Assert.assertTrue(board.isColumnFull(7));
+        assertEquals(0x7F, board.getPossibleColumns());
+    }
+
+    /**
+     * A shape whose columns do not fit in two words should be refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGeometryTooLarge() {
+        Geometry.of(9, 14);
+    }
+
+    /**
+     * Tiles off the board should be rejected rather than read from the
+     * spare bits or from another column.
+     */
+    @Test
+    public void testGetTileOffBoard() {
+        Board board = new Board();
+        board.makeMove(new Move(Player.RED, 0));
+        int[][] tiles = {{-1, 0}, {Board.NUM_ROWS, 0}, {0, -1}, {0, Board.NUM_COLS}};
+        for (int[] t : tiles) {
+            try {
+                board.getTile(t[0], t[1]);
+                Assert.fail();
+            } catch (IndexOutOfBoundsException e) {
+            }
+        }
+    }
+
 }
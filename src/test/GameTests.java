@@ -1,12 +1,25 @@
 package test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import game.AI;
 import game.Board;
+import game.Dummy;
 import game.Game;
+import game.Human;
+import game.Move;
 import game.Player;
 import game.Solver;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
 public class GameTests {
@@ -24,4 +37,89 @@ public class GameTests {
         assertTrue(game.isGameOver());
     }
 
+    /**
+     * A Human's move should be the column clicked once it is asked for, or
+     * the last one clicked before, when no move was wanted.
+     */
+    @Test
+    public void testHumanAsync() {
+        Human human = new Human(Player.RED);
+        human.columnClicked(1);
+        human.columnClicked(2);
+        assertEquals(2, human.getMovesAsync(new Board()).join()[0].getColumn());
+        CompletableFuture<Move[]> cancelled = human.getMovesAsync(new Board());
+        assertFalse(cancelled.isDone());
+        cancelled.cancel(false);
+        human.columnClicked(3);
+        assertEquals(3, human.getMovesAsync(new Board()).join()[0].getColumn());
+        CompletableFuture<Move[]> moves = human.getMovesAsync(new Board());
+        assertFalse(moves.isDone());
+        human.columnClicked(4);
+        assertEquals(4, moves.join()[0].getColumn());
+    }
+
+    /**
+     * A game played asynchronously should finish without its caller waiting,
+     * a Human's moves coming from clicks, some of them in full columns, and
+     * its turns running on the executor given.
+     */
+    @Test
+    public void testPlayAsync() throws Exception {
+        Human human = new Human(Player.YELLOW);
+        Game game = new Game(new AI(Player.RED, 2), human);
+        AtomicInteger turns = new AtomicInteger();
+        game.setExecutor(r -> {
+            turns.incrementAndGet();
+            ForkJoinPool.commonPool().execute(r);
+        });
+        CompletableFuture<Player> winner = game.playAsync();
+        for (int i = 0; i < 200 && !winner.isDone(); i++) {
+            Thread.sleep(50);
+            game.columnClicked(i % Board.NUM_COLS);
+        }
+        assertTrue(winner.isDone());
+        assertTrue(game.isGameOver());
+        assertEquals(game.getWinner(), winner.get());
+        assertTrue(turns.get() > 0);
+    }
+
+    /**
+     * A move off the board should be refused and asked for again, like a
+     * move into a full column, rather than end the game with an exception.
+     */
+    @Test
+    public void testMoveOffBoard() throws Exception {
+        Dummy dummy = new Dummy(Player.RED);
+        AtomicInteger asked = new AtomicInteger();
+        Solver offBoard = b -> asked.getAndIncrement() == 0
+                ? new Move[]{Move.of(Player.RED, Board.NUM_COLS + 2)} : dummy.getMoves(b);
+        Game game = new Game(offBoard, new Dummy(Player.YELLOW));
+        game.playAsync().get(30, TimeUnit.SECONDS);
+        assertTrue(game.isGameOver());
+        assertTrue(asked.get() > 1);
+    }
+
+    /**
+     * A Solver that cannot choose within the timeout should fail with a
+     * TimeoutException, and a random one never should.
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        Solver slow = b -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            return new Move[]{Move.of(Player.RED, 3)};
+        };
+        try {
+            slow.getMovesAsync(new Board(), 10, TimeUnit.MILLISECONDS).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Solver random = new Dummy(Player.RED);
+        assertEquals(1, random.getMovesAsync(new Board(), 0, TimeUnit.MILLISECONDS).get().length);
+    }
 }
@@ -0,0 +1,101 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import game.AI;
+import game.Board;
+import game.Move;
+import game.OpeningBook;
+import game.OpeningBookGenerator;
+import game.Player;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class OpeningBookTests {
+
+    /**
+     * An AI with a book should choose the same moves as one without, when
+     * the book was searched to the AI's depth, and should not find positions
+     * beyond the book's last ply.
+     */
+    @Test
+    public void testBookMatchesSearch() throws IOException {
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            int n = OpeningBookGenerator.generate(file, 2, 5);
+            OpeningBook book = new OpeningBook(file);
+            assertEquals(n, book.size());
+            for (int first = 0; first < Board.NUM_COLS; first++) {
+                for (int second = 0; second < Board.NUM_COLS; second++) {
+                    Board board = new Board();
+                    board.makeMove(Player.YELLOW, first);
+                    board.makeMove(Player.RED, second);
+                    assertTrue(book.probe(board, Player.YELLOW) != OpeningBook.MISS);
+                    AI withBook = new AI(Player.YELLOW, 5);
+                    withBook.setOpeningBook(book);
+                    assertEquals(columns(new AI(Player.YELLOW, 5).getMoves(board)),
+                            columns(withBook.getMoves(board)));
+                    assertEquals(0, withBook.getNodesSearched());
+                    board.makeMove(Player.YELLOW, 3);
+                    assertEquals(OpeningBook.MISS, book.probe(board, Player.RED));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A fixed-depth AI should not use a book searched deeper than its own
+     * depth, and so should choose the moves of its own search.
+     */
+    @Test
+    public void testDeeperBookIsIgnored() throws IOException {
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            OpeningBookGenerator.generate(file, 1, 5);
+            OpeningBook book = new OpeningBook(file);
+            for (int first = 0; first < Board.NUM_COLS; first++) {
+                Board board = new Board();
+                board.makeMove(Player.RED, first);
+                AI withBook = new AI(Player.YELLOW, 3);
+                withBook.setOpeningBook(book);
+                assertEquals(columns(new AI(Player.YELLOW, 3).getMoves(board)),
+                        columns(withBook.getMoves(board)));
+                assertTrue(withBook.getNodesSearched() > 0);
+                assertEquals(3, withBook.getDepthReached());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Shouldn't load a file that is not a book.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotABook() throws IOException {
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+            new OpeningBook(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Return the columns of moves, as a string.
+     */
+    private static String columns(Move[] moves) {
+        String s = "";
+        for (Move m : moves) {
+            s += m.getColumn();
+        }
+        return s;
+    }
+}
@@ -0,0 +1,91 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import game.AI;
+import game.Board;
+import game.Move;
+import game.PerfectSolver;
+import game.Player;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PerfectSolverTests {
+
+    /**
+     * A player who can win at once should score the most a win can with
+     * that disc, and the game should end with the next move.
+     */
+    @Test
+    public void testWinNow() {
+        Board board = new Board();
+        for (int i = 0; i < 3; i++) {
+            board.makeMove(Player.RED, 0);
+            board.makeMove(Player.YELLOW, 1);
+        }
+        PerfectSolver solver = new PerfectSolver(Player.RED);
+        int score = solver.solve(board, Player.RED);
+        assertEquals(Board.NUM_ROWS * Board.NUM_COLS / 2 + 1 - 4, score);
+        assertEquals(1, PerfectSolver.pliesToEnd(board, score));
+        Move[] moves = solver.getMoves(board);
+        assertEquals(1, moves.length);
+        assertEquals(0, moves[0].getColumn());
+    }
+
+    /**
+     * On positions that are won or lost, the solver should choose the same
+     * moves as an AI that searches to the end of the game: the fastest win
+     * or the slowest loss.
+     */
+    @Test
+    public void testMatchesFullSearch() {
+        Random random = new Random(15);
+        int decided = 0;
+        PerfectSolver[] solvers = {new PerfectSolver(Player.RED), new PerfectSolver(Player.YELLOW)};
+        while (decided < 20) {
+            Board board = new Board();
+            Player player = Player.RED;
+            while (board.getMoveCount() < 30 && board.hasConnectFour() == null) {
+                int[] columns = columns(board);
+                board.makeMove(player, columns[random.nextInt(columns.length)]);
+                player = player.opponent();
+            }
+            if (board.hasConnectFour() != null)
+                continue;
+            PerfectSolver solver = solvers[player.ordinal()];
+            int score = solver.solve(board, player);
+            if (score == 0)
+                continue;
+            decided++;
+            int empty = Board.NUM_ROWS * Board.NUM_COLS - board.getMoveCount();
+            AI ai = new AI(player, empty);
+            assertEquals(columns(ai.getMoves(board)), columns(solver.getMoves(board)));
+            assertTrue(PerfectSolver.pliesToEnd(board, score) <= empty);
+        }
+    }
+
+    /**
+     * Return the columns in which a disc can be played on Board b.
+     */
+    private static int[] columns(Board b) {
+        Move[] moves = b.getPossibleMoves(Player.RED);
+        int[] columns = new int[moves.length];
+        for (int i = 0; i < moves.length; i++) {
+            columns[i] = moves[i].getColumn();
+        }
+        return columns;
+    }
+
+    /**
+     * Return the columns of moves, as a string.
+     */
+    private static String columns(Move[] moves) {
+        String s = "";
+        for (Move m : moves) {
+            s += m.getColumn();
+        }
+        return s;
+    }
+}
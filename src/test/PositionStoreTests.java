@@ -0,0 +1,137 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import game.AI;
+import game.Board;
+import game.Move;
+import game.OpeningBook;
+import game.Player;
+import game.PositionStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+public class PositionStoreTests {
+
+    /**
+     * A result put in a store should be found after the store is reopened,
+     * also for the mirror image of its board, and a deeper result should
+     * not be replaced by a shallower one.
+     */
+    @Test
+    public void testReopen() throws IOException {
+        Path file = Files.createTempFile("store", ".log");
+        try {
+            Board board = new Board();
+            board.makeMove(Player.RED, 1);
+            Board mirror = new Board();
+            mirror.makeMove(Player.RED, Board.NUM_COLS - 2);
+            try (PositionStore store = new PositionStore(file)) {
+                store.put(board, Player.YELLOW, 1 << 2, 7, 10);
+                store.put(board, Player.YELLOW, 1 << 3, 5, 9);
+                store.flush();
+                assertEquals(1, store.size());
+            }
+            try (PositionStore store = new PositionStore(file)) {
+                long entry = store.probe(board, Player.YELLOW);
+                assertEquals(1 << 2, OpeningBook.columns(entry));
+                assertEquals(7, OpeningBook.score(entry));
+                assertEquals(10, OpeningBook.depth(entry));
+                assertEquals(1 << (Board.NUM_COLS - 3),
+                        OpeningBook.columns(store.probe(mirror, Player.YELLOW)));
+                assertEquals(PositionStore.MISS, store.probe(board, Player.RED));
+            }
+        } finally {
+            delete(file);
+        }
+    }
+
+    /**
+     * A store should drop a torn record at the end of its log, keep the
+     * records before it, and take new ones after it.
+     */
+    @Test
+    public void testTornTail() throws IOException {
+        Path file = Files.createTempFile("store", ".log");
+        try {
+            Board board = new Board();
+            try (PositionStore store = new PositionStore(file)) {
+                store.put(board, Player.RED, 1 << 3, 1, 12);
+            }
+            long length = Files.size(file);
+            try (FileChannel log = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                log.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}), length);
+            }
+            Files.delete(Paths.get(file + ".idx"));
+            board.makeMove(Player.RED, 3);
+            try (PositionStore store = new PositionStore(file)) {
+                assertEquals(length, Files.size(file));
+                assertEquals(1 << 3, OpeningBook.columns(store.probe(new Board(), Player.RED)));
+                store.put(board, Player.YELLOW, 1 << 3, -1, 11);
+            }
+            try (PositionStore store = new PositionStore(file)) {
+                assertEquals(2, store.size());
+                assertEquals(11, OpeningBook.depth(store.probe(board, Player.YELLOW)));
+            }
+        } finally {
+            delete(file);
+        }
+    }
+
+    /**
+     * An AI should store the result of a deep search and, in a later run,
+     * return the same moves, of the same depth, without searching.
+     */
+    @Test
+    public void testAIUsesStore() throws IOException {
+        Path file = Files.createTempFile("store", ".log");
+        try {
+            Board board = new Board();
+            board.makeMove(Player.RED, 3);
+            board.makeMove(Player.YELLOW, 2);
+            String columns;
+            try (PositionStore store = new PositionStore(file)) {
+                AI ai = new AI(Player.RED, AI.MIN_STORED_DEPTH);
+                ai.setPositionStore(store);
+                columns = columns(ai.getMoves(board));
+                assertTrue(ai.getNodesSearched() > 0);
+            }
+            try (PositionStore store = new PositionStore(file)) {
+                AI ai = new AI(Player.RED, AI.MIN_STORED_DEPTH);
+                ai.setPositionStore(store);
+                assertEquals(columns, columns(ai.getMoves(board)));
+                assertEquals(0, ai.getNodesSearched());
+                assertEquals(AI.MIN_STORED_DEPTH, ai.getDepthReached());
+            }
+        } finally {
+            delete(file);
+        }
+    }
+
+    /**
+     * Delete the store whose log is file f.
+     */
+    private static void delete(Path f) throws IOException {
+        Files.deleteIfExists(f);
+        Files.deleteIfExists(Paths.get(f + ".idx"));
+    }
+
+    /**
+     * Return the columns of moves, as a string.
+     */
+    private static String columns(Move[] moves) {
+        String s = "";
+        for (Move m : moves) {
+            s += m.getColumn();
+        }
+        return s;
+    }
+}
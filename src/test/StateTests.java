@@ -1,11 +1,14 @@
 package test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import game.Board;
 import game.Move;
 import game.Player;
 import game.State;
 
+import java.util.Iterator;
+
 import org.junit.Test;
 
 public class StateTests {
@@ -24,4 +27,30 @@ public class StateTests {
         assertEquals(0, state.getChildren().length);
     }
 
+    /**
+     * The child iterator should give the children of the playable columns
+     * in the order asked for, each with the move made.
+     */
+    @Test
+    public void testChildIteratorOrder() {
+        Board board = new Board();
+        for (int i = 0; i < Board.NUM_ROWS; i++) {
+            board.makeMove(new Move(i % 2 == 0 ? Player.RED : Player.YELLOW, 2));
+        }
+        State state = new State(Player.RED, board, null);
+        Iterator<State> it = state.childIterator(new int[] {3, 2, 4, 3, 0});
+        State child = it.next();
+        assertEquals(3, child.getLastMove().getColumn());
+        assertEquals(Player.YELLOW, child.getPlayer());
+        assertEquals(Player.RED, child.getBoard().getTile(Board.NUM_ROWS - 1, 3));
+        assertEquals(4, it.next().getLastMove().getColumn());
+        assertEquals(0, it.next().getLastMove().getColumn());
+        assertFalse(it.hasNext());
+        assertEquals(0, state.getChildren().length);
+
+        state.initializeChildren();
+        assertEquals(Board.NUM_COLS - 1, state.getChildren().length);
+        assertEquals(1, state.getChildren()[1].getLastMove().getColumn());
+    }
+
 }
@@ -0,0 +1,123 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import game.AI;
+import game.Board;
+import game.Dummy;
+import game.Geometry;
+import game.Move;
+import game.Tournament;
+
+import org.junit.Test;
+
+public class TournamentTests {
+
+    /**
+     * An AI should beat a random player nearly every game, whichever colour
+     * it plays, and every game should be counted once.
+     */
+    @Test
+    public void testAIBeatsDummy() {
+        Tournament t = new Tournament(p -> new AI(p, 4), p -> new Dummy(p));
+        t.setGames(40);
+        t.setThreads(4);
+        Tournament.Result result = t.run();
+        assertEquals(40, result.getGames());
+        assertEquals(40, result.getWins() + result.getDraws() + result.getLosses());
+        assertEquals(0, result.getForfeits());
+        assertTrue(result.getWins() >= 36);
+        assertTrue(result.getElo() > 200);
+        assertTrue(result.getLatency(0, 50) <= result.getLatency(0, 99));
+        assertTrue(result.getLatency(1, 100) > 0);
+    }
+
+    /**
+     * A solver that returns no move should lose every game by forfeit, and
+     * an SPRT should stop the tournament long before all its games.
+     */
+    @Test
+    public void testForfeitsAndSprt() {
+        Tournament t = new Tournament(p -> new Dummy(p), p -> b -> new Move[] {});
+        t.setGames(1000);
+        t.setOpenings("3", "33", "324");
+        t.setSprt(0, 50, 0.05, 0.05);
+        Tournament.Result result = t.run();
+        assertTrue(result.getGames() < 1000);
+        assertEquals(result.getGames(), result.getWins());
+        assertEquals(result.getGames(), result.getForfeits());
+        assertEquals(Tournament.Decision.H1, result.sprt(0, 50, 0.05, 0.05));
+        assertEquals(0, result.getLatency(1, 50) / 1000000);
+    }
+
+    /**
+     * A solver that throws should lose by forfeit, the game counted as an
+     * error, and an exception from making a solver should reach the caller.
+     */
+    @Test
+    public void testErrors() {
+        Tournament t = new Tournament(p -> new Dummy(p), p -> b -> {
+            throw new IllegalStateException("broken");
+        });
+        t.setGames(10);
+        Tournament.Result result = t.run();
+        assertEquals(10, result.getWins());
+        assertEquals(10, result.getForfeits());
+        assertEquals(10, result.getErrors());
+
+        t = new Tournament(p -> new Dummy(p), p -> {
+            throw new IllegalStateException("cannot make");
+        });
+        t.setGames(10);
+        try {
+            t.run();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("cannot make", e.getMessage());
+        }
+    }
+
+    /**
+     * Random openings too long to leave games in progress should be
+     * rejected, whichever of the openings and the board is set first.
+     */
+    @Test
+    public void testRandomOpeningsTooLong() {
+        Tournament t = new Tournament(p -> new Dummy(p), p -> new Dummy(p));
+        t.setRandomOpenings(Board.NUM_ROWS * Board.NUM_COLS / 2, 0);
+        try {
+            t.setRandomOpenings(Board.NUM_ROWS * Board.NUM_COLS, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            t.setGeometry(Geometry.of(4, 4));
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        t.setRandomOpenings(8, 0);
+        t.setGeometry(Geometry.of(4, 4));
+        t.setGames(4);
+        assertEquals(4, t.run().getGames());
+    }
+
+    /**
+     * Openings given before the board should be checked again on the new
+     * board, and the board rejected if one cannot be played on it.
+     */
+    @Test
+    public void testOpeningsOnNewGeometry() {
+        Tournament t = new Tournament(p -> new Dummy(p), p -> new Dummy(p));
+        t.setOpenings("6");
+        try {
+            t.setGeometry(Geometry.of(4, 4));
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        t.setOpenings("3", "12");
+        t.setGeometry(Geometry.of(4, 4));
+        t.setGames(4);
+        assertEquals(4, t.run().getGames());
+    }
+}
@@ -0,0 +1,79 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import game.TranspositionTable;
+
+import org.junit.Test;
+
+public class TranspositionTableTests {
+
+    /**
+     * A stored entry should be found again with all its fields intact.
+     */
+    @Test
+    public void testStoreAndProbe() {
+        TranspositionTable table = new TranspositionTable(1,
+                TranspositionTable.Replacement.DEPTH_PREFERRED);
+        table.store(12345L, 7, TranspositionTable.LOWER, -420000, 3);
+        long entry = table.probe(12345L);
+        assertEquals(-420000, TranspositionTable.score(entry));
+        assertEquals(7, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(entry));
+        assertEquals(3, TranspositionTable.column(entry));
+        assertEquals(TranspositionTable.MISS, table.probe(54321L));
+        assertEquals(0.5, table.getHitRate(), 0);
+    }
+
+    /**
+     * With depth preferred replacement a shallow result should not push
+     * the deepest result out of a full bucket.
+     */
+    @Test
+    public void testDepthPreferredKeepsDeepEntry() {
+        TranspositionTable table = new TranspositionTable(1,
+                TranspositionTable.Replacement.DEPTH_PREFERRED);
+        // keys that differ only above the bucket bits share a bucket
+        long deep = 1L << 56;
+        table.store(deep, 9, TranspositionTable.EXACT, 1, 0);
+        for (long i = 2; i < 10; i++) {
+            table.store(i << 56, 2, TranspositionTable.EXACT, 1, 0);
+        }
+        assertEquals(9, TranspositionTable.depth(table.probe(deep)));
+    }
+
+    /**
+     * With always replace the most recent results should be kept.
+     */
+    @Test
+    public void testAlwaysReplaceKeepsRecentEntries() {
+        TranspositionTable table = new TranspositionTable(1,
+                TranspositionTable.Replacement.ALWAYS_REPLACE);
+        for (long i = 1; i < 10; i++) {
+            table.store(i << 56, 10 - (int) i, TranspositionTable.EXACT, 1, 0);
+        }
+        assertEquals(TranspositionTable.MISS, table.probe(1L << 56));
+        assertEquals(1, TranspositionTable.depth(table.probe(9L << 56)));
+        assertEquals(2, TranspositionTable.depth(table.probe(8L << 56)));
+    }
+
+    /**
+     * An entry left by searches long ago should give way to the current
+     * search's results, however deep it is.
+     */
+    @Test
+    public void testOldGenerationReplacedFirst() {
+        TranspositionTable table = new TranspositionTable(1,
+                TranspositionTable.Replacement.DEPTH_PREFERRED);
+        long old = 1L << 56;
+        table.store(old, 9, TranspositionTable.EXACT, 1, 0);
+        for (int i = 0; i < 5; i++) {
+            table.newSearch();
+        }
+        table.store(2L << 56, 2, TranspositionTable.EXACT, 1, 0);
+        table.store(3L << 56, 1, TranspositionTable.EXACT, 1, 0);
+        assertEquals(TranspositionTable.MISS, table.probe(old));
+        assertEquals(2, TranspositionTable.depth(table.probe(2L << 56)));
+        assertEquals(1, TranspositionTable.depth(table.probe(3L << 56)));
+    }
+
+}
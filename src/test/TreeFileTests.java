@@ -0,0 +1,106 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import game.AI;
+import game.Board;
+import game.GameTree;
+import game.Player;
+import game.TreeFile;
+import game.TreeWriter;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+public class TreeFileTests {
+
+    /**
+     * Every node of a dump, read back by walking down from the root, should
+     * have the board, value, move and children of the same node of the
+     * GameTree that was written. The dump is larger than the writer's
+     * buffer, so some subtree ends are filled in on disk.
+     */
+    @Test
+    public void testDumpMatchesTree() throws IOException {
+        Board board = new Board();
+        board.makeMove(Player.RED, 3);
+        GameTree tree = AI.createGameTree(board, Player.YELLOW, 4);
+        new AI(Player.YELLOW, 4).minimax(tree);
+        Path file = Files.createTempFile("tree", ".c4t");
+        try {
+            assertEquals(tree.size(), TreeFile.write(tree, tree.getRoot(), file));
+            try (TreeFile dump = new TreeFile(file)) {
+                assertEquals(tree.size(), dump.size());
+                assertEquals(tree.size(), dump.getSubtreeSize(dump.getRoot()));
+                assertNull(dump.getLastMove(dump.getRoot()));
+                check(tree, tree.getRoot(), dump, dump.getRoot());
+
+                Board b = tree.getBoard(tree.getChild(tree.getChild(tree.getRoot(), 6), 2));
+                long n = dump.findChild(dump.findChild(dump.getRoot(), 6), 2);
+                assertEquals(n, dump.find(dump.getRoot(), b));
+                assertEquals(-1, dump.find(dump.getChild(dump.getRoot(), 0), b));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A dump cut short by a maximum depth and number of nodes should count
+     * only the children it holds, and each subtree should end where the
+     * next one starts.
+     */
+    @Test
+    public void testMaxNodes() throws IOException {
+        GameTree tree = AI.createGameTree(new Board(), Player.RED, 3);
+        TreeWriter writer = new TreeWriter();
+        writer.setFormat(TreeWriter.Format.INDEXED);
+        writer.setMaxDepth(2);
+        writer.setMaxNodes(12);
+        Path file = Files.createTempFile("tree", ".c4t");
+        try {
+            try (FileChannel c = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                assertEquals(12, writer.write(tree, tree.getRoot(), c));
+            }
+            try (TreeFile dump = new TreeFile(file)) {
+                assertEquals(12, dump.size());
+                assertEquals(2, dump.getChildCount(dump.getRoot()));
+                long first = dump.getChild(dump.getRoot(), 0);
+                assertEquals(Board.NUM_COLS, dump.getChildCount(first));
+                assertEquals(1 + Board.NUM_COLS, dump.getSubtreeSize(first));
+                long second = dump.getChild(dump.getRoot(), 1);
+                assertEquals(1, dump.getLastMove(second).getColumn());
+                assertEquals(2, dump.getChildCount(second));
+                assertEquals(2, dump.getDepth(dump.getChild(second, 1)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Check that node m of dump and its descendants match node n of tree
+     * and its descendants.
+     */
+    private static void check(GameTree tree, int n, TreeFile dump, long m) {
+        Board expected = tree.getBoard(n);
+        Board actual = dump.getBoard(m);
+        assertEquals(expected.getHash(), actual.getHash());
+        assertEquals(expected.getMoveCount(), actual.getMoveCount());
+        assertEquals(expected.hasConnectFour(), actual.hasConnectFour());
+        assertEquals(tree.getValue(n), dump.getValue(m));
+        assertEquals(tree.getPlayer(n), dump.getPlayer(m));
+        assertEquals(tree.getDepth(n), dump.getDepth(m));
+        assertEquals(tree.getChildCount(n), dump.getChildCount(m));
+        for (int i = 0; i < tree.getChildCount(n); i++) {
+            int child = tree.getChild(n, i);
+            assertEquals(tree.getLastMove(child).getColumn(), dump.getLastMove(dump.getChild(m, i)).getColumn());
+            check(tree, child, dump, dump.getChild(m, i));
+        }
+    }
+}
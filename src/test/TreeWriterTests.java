@@ -0,0 +1,86 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import game.AI;
+import game.Board;
+import game.GameTree;
+import game.Move;
+import game.Player;
+import game.State;
+import game.TreeWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class TreeWriterTests {
+
+    /**
+     * A tree of States and the same GameTree should be written as the same
+     * text, which is what State.toString gives.
+     */
+    @Test
+    public void testTextMatchesToString() throws IOException {
+        Board board = new Board();
+        board.makeMove(new Move(Player.RED, 3));
+        State root = new State(Player.YELLOW, board, null);
+        AI.createGameTree(root, 2);
+        GameTree tree = AI.createGameTree(board, Player.YELLOW, 2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long nodes = new TreeWriter().write(tree, tree.getRoot(), Channels.newChannel(bytes));
+        assertEquals(1 + 7 + 49, nodes);
+        String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(root.toString(), text);
+        assertTrue(text.startsWith("YELLOW to play\nValue: 0\n"));
+        assertTrue(text.contains("\n   ----------------\n"));
+    }
+
+    /**
+     * The maximum depth and number of nodes should cut a binary dump short,
+     * leaving whole records of the first nodes in depth-first order.
+     */
+    @Test
+    public void testBinaryLimits() throws IOException {
+        GameTree tree = AI.createGameTree(new Board(), Player.RED, 3);
+        TreeWriter writer = new TreeWriter();
+        writer.setFormat(TreeWriter.Format.BINARY);
+        writer.setMaxDepth(2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals(1 + 7 + 49, writer.write(tree, tree.getRoot(), Channels.newChannel(bytes)));
+        writer.setMaxNodes(10);
+        bytes.reset();
+        assertEquals(10, writer.write(tree, tree.getRoot(), Channels.newChannel(bytes)));
+        ByteBuffer dump = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(TreeWriter.MAGIC, dump.getInt());
+        assertEquals(TreeWriter.VERSION, dump.getInt());
+        int[] depths = {0, 1, 2, 2, 2, 2, 2, 2, 2, 1};
+        for (int depth : depths) {
+            assertEquals(depth, dump.get());
+            dump.position(dump.position() + 2 + Integer.BYTES + 2 * Long.BYTES);
+        }
+        assertEquals(0, dump.remaining());
+    }
+
+    /**
+     * The text format should note that the tree was cut short only if a node
+     * was left out, not when the tree has exactly the maximum number.
+     */
+    @Test
+    public void testTextStoppedNote() throws IOException {
+        GameTree tree = AI.createGameTree(new Board(), Player.RED, 1);
+        TreeWriter writer = new TreeWriter();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.setMaxNodes(1 + 7);
+        assertEquals(1 + 7, writer.write(tree, tree.getRoot(), Channels.newChannel(bytes)));
+        assertTrue(!new String(bytes.toByteArray(), StandardCharsets.UTF_8).contains("stopped after"));
+        writer.setMaxNodes(1 + 6);
+        bytes.reset();
+        assertEquals(1 + 6, writer.write(tree, tree.getRoot(), Channels.newChannel(bytes)));
+        assertTrue(new String(bytes.toByteArray(), StandardCharsets.UTF_8).endsWith("... stopped after 7 nodes\n"));
+    }
+}